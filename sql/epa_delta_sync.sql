@@ -0,0 +1,11 @@
+-- Partieller Index für den Delta-Sync (POST /epa/sync-all?scope=changed).
+-- Enthält nur Patienten, die noch übertragen werden müssen; die Größe wächst
+-- mit der Änderungsrate statt mit der Gesamtzahl der Patienten.
+--   psql -U hospital_admin -d hospital_db -f sql/epa_delta_sync.sql
+
+CREATE INDEX IF NOT EXISTS idx_patients_epa_delta ON public.patients USING btree (id)
+    WHERE status = 'active'
+      AND epa_enabled = true
+      AND (epa_sync_status IN ('pending', 'error')
+           OR epa_last_sync IS NULL
+           OR updated_at > epa_last_sync);
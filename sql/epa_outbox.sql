@@ -0,0 +1,33 @@
+-- Transaktionale Outbox für die EPA-Synchronisation.
+-- Anlegen/Ändern eines Patienten schreibt in derselben Transaktion einen Eintrag,
+-- den der EPAOutboxDispatcher im Hintergrund an die EPA überträgt.
+--   psql -U hospital_admin -d hospital_db -f sql/epa_outbox.sql
+
+CREATE TABLE IF NOT EXISTS public.epa_outbox (
+    id bigserial PRIMARY KEY,
+    patient_id bigint NOT NULL REFERENCES public.patients(id) ON DELETE CASCADE,
+    operation character varying(20) NOT NULL DEFAULT 'upsert',
+    status character varying(20) NOT NULL DEFAULT 'pending',
+    attempts integer NOT NULL DEFAULT 0,
+    next_attempt_at timestamp without time zone NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    locked_by character varying(100),
+    locked_until timestamp without time zone,
+    last_error text,
+    created_at timestamp without time zone NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE public.epa_outbox OWNER TO hospital_admin;
+
+COMMENT ON TABLE public.epa_outbox IS 'Ausstehende EPA-Übertragungen (pending, processing, failed)';
+
+-- Höchstens ein offener Eintrag pro Patient; weitere Änderungen werden zusammengefasst
+CREATE UNIQUE INDEX IF NOT EXISTS idx_epa_outbox_pending_patient ON public.epa_outbox USING btree (patient_id)
+    WHERE status = 'pending';
+
+-- Abholen fälliger Einträge durch den Dispatcher
+CREATE INDEX IF NOT EXISTS idx_epa_outbox_due ON public.epa_outbox USING btree (next_attempt_at, id)
+    WHERE status = 'pending';
+
+-- Abgelaufene Leases verarbeitender Worker
+CREATE INDEX IF NOT EXISTS idx_epa_outbox_lease ON public.epa_outbox USING btree (locked_until)
+    WHERE status = 'processing';
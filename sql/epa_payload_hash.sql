@@ -0,0 +1,6 @@
+-- Hash des zuletzt erfolgreich an die EPA übertragenen FHIR-Dokuments.
+-- Die Synchronisation überspringt Patienten, deren aktuelles Dokument denselben
+-- Hash ergibt (z.B. nach reinen Änderungen an Aufnahmedaten).
+--   psql -U hospital_admin -d hospital_db -f sql/epa_payload_hash.sql
+
+ALTER TABLE public.patients ADD COLUMN IF NOT EXISTS epa_payload_hash character varying(64);
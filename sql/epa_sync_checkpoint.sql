@@ -0,0 +1,23 @@
+-- Checkpoints der Massen-Synchronisation (EPASyncJobManager).
+-- Pro Lauf die letzte Patienten-ID, bis zu der alle Patienten verarbeitet wurden;
+-- ein unterbrochener Lauf (z.B. Server-Neustart) setzt dort wieder auf.
+--   psql -U hospital_admin -d hospital_db -f sql/epa_sync_checkpoint.sql
+
+CREATE TABLE IF NOT EXISTS public.epa_sync_checkpoint (
+    run_id character varying(36) PRIMARY KEY,
+    mode character varying(20) NOT NULL,
+    changed_only boolean NOT NULL,
+    status character varying(20) NOT NULL DEFAULT 'running',
+    last_patient_id bigint NOT NULL DEFAULT 0,
+    processed bigint NOT NULL DEFAULT 0,
+    started_at timestamp without time zone NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at timestamp without time zone NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+ALTER TABLE public.epa_sync_checkpoint OWNER TO hospital_admin;
+
+COMMENT ON TABLE public.epa_sync_checkpoint IS 'Fortschritt der EPA-Massen-Synchronisation (running, completed, cancelled, failed)';
+
+-- Suche nach dem letzten fortsetzbaren Lauf
+CREATE INDEX IF NOT EXISTS idx_epa_sync_checkpoint_resumable ON public.epa_sync_checkpoint USING btree (mode, changed_only, updated_at)
+    WHERE status IN ('running', 'failed');
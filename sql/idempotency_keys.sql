@@ -0,0 +1,19 @@
+-- Tabelle für Idempotency-Keys der POST-Endpunkte
+-- (POST /patients, POST /patients/batch, POST /epa/sync/{patientId}).
+--   psql -U hospital_admin -d hospital_db -f sql/idempotency_keys.sql
+
+CREATE TABLE IF NOT EXISTS public.idempotency_keys (
+    idempotency_key character varying(100) PRIMARY KEY,
+    endpoint character varying(100) NOT NULL,
+    response_status integer NOT NULL,
+    response_body text,
+    created_at timestamp without time zone NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at timestamp without time zone NOT NULL
+);
+
+ALTER TABLE public.idempotency_keys OWNER TO hospital_admin;
+
+COMMENT ON TABLE public.idempotency_keys IS 'Gespeicherte Antworten für wiederholte POST-Anfragen mit Idempotency-Key';
+
+-- Abgelaufene Einträge werden periodisch gelöscht
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires ON public.idempotency_keys USING btree (expires_at);
@@ -0,0 +1,94 @@
+package com.hospital.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+
+/**
+ * Konfigurationsparameter der EPA-Integration (Schlüssel/Wert)
+ */
+@Entity
+@Table(name = "epa_configuration")
+@NamedQueries({
+        @NamedQuery(name = "EPAConfiguration.findAll", query = "SELECT c FROM EPAConfiguration c ORDER BY c.configKey")
+})
+public class EPAConfiguration {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "config_key", nullable = false, unique = true, length = 100)
+    private String configKey;
+
+    @Column(name = "config_value", columnDefinition = "TEXT")
+    private String configValue;
+
+    @Column(columnDefinition = "TEXT")
+    private String description;
+
+    @Column(name = "last_updated")
+    private LocalDateTime lastUpdated;
+
+    @Column(name = "updated_by", length = 100)
+    private String updatedBy;
+
+    public EPAConfiguration() {
+    }
+
+    public EPAConfiguration(String configKey, String configValue) {
+        this.configKey = configKey;
+        this.configValue = configValue;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getConfigKey() {
+        return configKey;
+    }
+
+    public void setConfigKey(String configKey) {
+        this.configKey = configKey;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public void setConfigValue(String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public LocalDateTime getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(LocalDateTime lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getUpdatedBy() {
+        return updatedBy;
+    }
+
+    public void setUpdatedBy(String updatedBy) {
+        this.updatedBy = updatedBy;
+    }
+}
@@ -0,0 +1,131 @@
+package com.hospital.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+
+/**
+ * Fortschritt eines Massen-Sync-Laufs: letzte Patienten-ID, bis zu der alle
+ * Patienten verarbeitet wurden. Ein abgebrochener Lauf setzt dort wieder auf.
+ */
+@Entity
+@Table(name = "epa_sync_checkpoint")
+@NamedQueries({
+        @NamedQuery(name = "EPASyncCheckpoint.findResumable", query = "SELECT c FROM EPASyncCheckpoint c " +
+                "WHERE c.mode = :mode AND c.changedOnly = :changedOnly AND c.status IN ('running', 'failed') " +
+                "AND c.updatedAt >= :notBefore ORDER BY c.updatedAt DESC"),
+        @NamedQuery(name = "EPASyncCheckpoint.deleteOlderThan", query = "DELETE FROM EPASyncCheckpoint c " +
+                "WHERE c.updatedAt < :before")
+})
+public class EPASyncCheckpoint {
+
+    public static final String STATUS_RUNNING = "running";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_CANCELLED = "cancelled";
+    public static final String STATUS_FAILED = "failed";
+
+    @Id
+    @Column(name = "run_id", length = 36)
+    private String runId;
+
+    @Column(nullable = false, length = 20)
+    private String mode;
+
+    @Column(name = "changed_only", nullable = false)
+    private boolean changedOnly;
+
+    @Column(nullable = false, length = 20)
+    private String status = STATUS_RUNNING;
+
+    @Column(name = "last_patient_id", nullable = false)
+    private long lastPatientId;
+
+    @Column(nullable = false)
+    private long processed;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public EPASyncCheckpoint() {
+    }
+
+    public EPASyncCheckpoint(String runId, String mode, boolean changedOnly, LocalDateTime startedAt) {
+        this.runId = runId;
+        this.mode = mode;
+        this.changedOnly = changedOnly;
+        this.startedAt = startedAt;
+        this.updatedAt = startedAt;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public boolean isChangedOnly() {
+        return changedOnly;
+    }
+
+    public void setChangedOnly(boolean changedOnly) {
+        this.changedOnly = changedOnly;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getLastPatientId() {
+        return lastPatientId;
+    }
+
+    public void setLastPatientId(long lastPatientId) {
+        this.lastPatientId = lastPatientId;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -26,6 +26,41 @@ import jakarta.persistence.Table;
         @NamedQuery(name = "Patient.searchByName", query = "SELECT p FROM Patient p WHERE LOWER(p.firstName) LIKE LOWER(:search) OR LOWER(p.lastName) LIKE LOWER(:search)"),
         @NamedQuery(name = "Patient.findByEpaId", query = "SELECT p FROM Patient p WHERE p.epaId = :epaId"),
 
+        // Abgleich beim EPA-Import (ein Query pro Block)
+        @NamedQuery(name = "Patient.findByEpaIds", query = "SELECT p FROM Patient p WHERE p.epaId IN :epaIds"),
+        @NamedQuery(name = "Patient.findByInsuranceNumbers", query = "SELECT p FROM Patient p " +
+                "WHERE p.insuranceNumber IN :insuranceNumbers"),
+
+        @NamedQuery(name = "Patient.findEpaSyncCandidates", query = "SELECT p FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true AND p.id > :afterId ORDER BY p.id"),
+        @NamedQuery(name = "Patient.countEpaSyncCandidates", query = "SELECT COUNT(p) FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true"),
+
+        // Delta-Sync: nur geänderte oder fehlgeschlagene Patienten (Index idx_patients_epa_delta)
+        @NamedQuery(name = "Patient.findEpaDeltaCandidates", query = "SELECT p FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true AND " +
+                "(p.epaSyncStatus IN ('pending', 'error') OR p.epaLastSync IS NULL OR p.updatedAt > p.epaLastSync) " +
+                "AND p.id > :afterId ORDER BY p.id"),
+        @NamedQuery(name = "Patient.countEpaDeltaCandidates", query = "SELECT COUNT(p) FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true AND " +
+                "(p.epaSyncStatus IN ('pending', 'error') OR p.epaLastSync IS NULL OR p.updatedAt > p.epaLastSync)"),
+
+        // Restmenge eines fortgesetzten Laufs (nach dem Checkpoint)
+        @NamedQuery(name = "Patient.countEpaSyncCandidatesAfter", query = "SELECT COUNT(p) FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true AND p.id > :afterId"),
+        @NamedQuery(name = "Patient.countEpaDeltaCandidatesAfter", query = "SELECT COUNT(p) FROM Patient p " +
+                "WHERE p.status = 'active' AND p.epaEnabled = true AND " +
+                "(p.epaSyncStatus IN ('pending', 'error') OR p.epaLastSync IS NULL OR p.updatedAt > p.epaLastSync) " +
+                "AND p.id > :afterId"),
+
+        // Ergebnis der EPA-Übertragung; synced nur, wenn der Patient seit dem Lesen nicht geändert wurde
+        @NamedQuery(name = "Patient.markEpaSynced", query = "UPDATE Patient p SET p.epaId = COALESCE(:epaId, p.epaId), " +
+                "p.epaPayloadHash = COALESCE(:payloadHash, p.epaPayloadHash), " +
+                "p.epaSyncStatus = 'synced', p.epaLastSync = CURRENT_TIMESTAMP, p.epaSyncError = NULL " +
+                "WHERE p.id = :id AND (p.updatedAt = :updatedAt OR p.updatedAt IS NULL)"),
+        @NamedQuery(name = "Patient.markEpaSyncError", query = "UPDATE Patient p SET " +
+                "p.epaSyncStatus = 'error', p.epaSyncError = :error WHERE p.id = :id"),
+
         // NEU: Hinzufügen
         @NamedQuery(name = "Patient.findRandom", query = "SELECT p FROM Patient p ORDER BY function('RANDOM')"),
 
@@ -106,6 +141,9 @@ public class Patient {
     @Column(name = "epa_sync_error", columnDefinition = "TEXT")
     private String epaSyncError;
 
+    @Column(name = "epa_payload_hash", length = 64)
+    private String epaPayloadHash; // SHA-256 des zuletzt erfolgreich übertragenen FHIR-Dokuments
+
     @Column(name = "epa_enabled")
     private Boolean epaEnabled = true; // Ob Patient EPA-Synchronisation erlaubt
 
@@ -320,6 +358,14 @@ public class Patient {
         this.epaSyncError = epaSyncError;
     }
 
+    public String getEpaPayloadHash() {
+        return epaPayloadHash;
+    }
+
+    public void setEpaPayloadHash(String epaPayloadHash) {
+        this.epaPayloadHash = epaPayloadHash;
+    }
+
     public Boolean getEpaEnabled() {
         return epaEnabled;
     }
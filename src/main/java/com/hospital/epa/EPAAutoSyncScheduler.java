@@ -0,0 +1,81 @@
+package com.hospital.epa;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+
+/**
+ * Startet die automatische Delta-Synchronisation gemäß epa_auto_sync und
+ * epa_sync_interval_minutes. Pro Intervall läuft höchstens ein Job; die
+ * Übertragungen werden über den Großteil des Intervalls verteilt, statt die
+ * EPA zu Beginn mit allen Änderungen auf einmal zu belasten.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPAAutoSyncScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAAutoSyncScheduler.class.getName());
+
+    private static final int DEFAULT_INTERVAL_MINUTES = 60;
+
+    // Anteil des Intervalls, über den verteilt wird; der Rest ist Puffer bis zum nächsten Lauf
+    private static final double SPREAD_FRACTION = 0.8;
+
+    @Inject
+    private EPAConfigService configService;
+
+    @Inject
+    private EPASyncJobManager jobManager;
+
+    private final LongSupplier clock;
+
+    private volatile long lastStartNanos;
+    private volatile boolean started;
+
+    public EPAAutoSyncScheduler() {
+        this(System::nanoTime);
+    }
+
+    EPAAutoSyncScheduler(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Prüft jede Minute, ob ein automatischer Lauf fällig ist
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    public synchronized void tick() {
+        if (!configService.getBoolean(EPAConfigService.AUTO_SYNC, false)) {
+            return;
+        }
+        int intervalMinutes = Math.max(1,
+                configService.getInt(EPAConfigService.SYNC_INTERVAL_MINUTES, DEFAULT_INTERVAL_MINUTES));
+        long now = clock.getAsLong();
+        if (started && now - lastStartNanos < TimeUnit.MINUTES.toNanos(intervalMinutes)) {
+            return;
+        }
+        EPASyncJob running = jobManager.getActiveJob();
+        if (running != null) {
+            // Kein zweiter Lauf neben einem laufenden (auch manuell gestarteten) Job
+            LOGGER.info("Automatische EPA-Synchronisation übersprungen, Job " + running.getId() + " läuft noch");
+            return;
+        }
+        long spreadSeconds = (long) (TimeUnit.MINUTES.toSeconds(intervalMinutes) * SPREAD_FRACTION);
+        EPASyncJob job = jobManager.start("single", true, spreadSeconds);
+        lastStartNanos = now;
+        started = true;
+        LOGGER.info("Automatische EPA-Synchronisation gestartet (Job " + job.getId() + ", Intervall "
+                + intervalMinutes + " min)");
+    }
+}
@@ -0,0 +1,215 @@
+package com.hospital.epa;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Circuit Breaker für alle EPA-Aufrufe.
+ * Bewertet die letzten Aufrufe in einem Zählfenster; überschreiten Fehler- oder
+ * Langsam-Quote den Schwellwert, werden Aufrufe für eine Wartezeit sofort
+ * abgewiesen (OPEN). Danach lassen einige Probeaufrufe (HALF_OPEN) entscheiden,
+ * ob der Breaker wieder schließt.
+ */
+@ApplicationScoped
+public class EPACircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(EPACircuitBreaker.class.getName());
+
+    // Anzahl der zuletzt bewerteten Aufrufe
+    private static final int WINDOW_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_CB_WINDOW_SIZE", "20"));
+
+    // Fehlerquote in Prozent, ab der der Breaker öffnet
+    private static final int FAILURE_RATE_THRESHOLD = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_CB_FAILURE_RATE", "50"));
+
+    // Aufrufe über dieser Dauer gelten als langsam
+    private static final long SLOW_CALL_MILLIS = Long.parseLong(System.getenv()
+            .getOrDefault("EPA_CB_SLOW_CALL_MS", "5000"));
+
+    // Quote langsamer Aufrufe in Prozent, ab der der Breaker öffnet
+    private static final int SLOW_CALL_RATE_THRESHOLD = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_CB_SLOW_CALL_RATE", "80"));
+
+    // Wartezeit im Zustand OPEN, bevor Probeaufrufe erlaubt werden
+    private static final long OPEN_MILLIS = Long.parseLong(System.getenv()
+            .getOrDefault("EPA_CB_OPEN_SECONDS", "30")) * 1000;
+
+    private static final int HALF_OPEN_CALLS = 3;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallMillis;
+    private final int slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final LongSupplier clock;
+
+    // Ringpuffer der letzten Ergebnisse
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int position;
+    private int recorded;
+    private int failedInWindow;
+    private int slowInWindow;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSucceeded;
+    private long rejectedCalls;
+    private long openedCount;
+
+    public EPACircuitBreaker() {
+        this(WINDOW_SIZE, FAILURE_RATE_THRESHOLD, SLOW_CALL_MILLIS, SLOW_CALL_RATE_THRESHOLD,
+                OPEN_MILLIS, HALF_OPEN_CALLS, System::currentTimeMillis);
+    }
+
+    EPACircuitBreaker(int windowSize, int failureRateThreshold, long slowCallMillis,
+            int slowCallRateThreshold, long openMillis, int halfOpenCalls, LongSupplier clock) {
+        this.windowSize = windowSize;
+        // Erst ab einem halben Fenster bewerten, damit einzelne Fehler nicht sofort öffnen
+        this.minimumCalls = Math.max(1, windowSize / 2);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.clock = clock;
+        this.failedCalls = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Prüft, ob ein Aufruf durchgelassen wird. Jeder erlaubte Aufruf muss mit
+     * {@link #onResult(boolean, long)} abgeschlossen werden.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            transitionTo(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits < halfOpenCalls) {
+                    halfOpenPermits++;
+                    return true;
+                }
+                rejectedCalls++;
+                return false;
+            default:
+                rejectedCalls++;
+                return false;
+        }
+    }
+
+    /**
+     * Erfasst das Ergebnis eines durchgelassenen Aufrufs
+     */
+    public synchronized void onResult(boolean failed, long durationMillis) {
+        boolean slow = durationMillis >= slowCallMillis;
+        if (state == State.HALF_OPEN) {
+            if (failed || slow) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Nachzügler aus der Zeit vor dem Öffnen
+            return;
+        }
+
+        record(failed, slow);
+        if (recorded >= minimumCalls
+                && (getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            transitionTo(State.HALF_OPEN);
+        }
+        return state;
+    }
+
+    /**
+     * Fehlerquote im aktuellen Fenster in Prozent
+     */
+    public synchronized int getFailureRate() {
+        return recorded == 0 ? 0 : failedInWindow * 100 / recorded;
+    }
+
+    /**
+     * Quote langsamer Aufrufe im aktuellen Fenster in Prozent
+     */
+    public synchronized int getSlowCallRate() {
+        return recorded == 0 ? 0 : slowInWindow * 100 / recorded;
+    }
+
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    public synchronized String toJson() {
+        return String.format(
+                "{\"state\": \"%s\", \"failureRate\": %d, \"slowCallRate\": %d, \"bufferedCalls\": %d, "
+                        + "\"rejectedCalls\": %d, \"timesOpened\": %d}",
+                getState(), getFailureRate(), getSlowCallRate(), recorded, rejectedCalls, openedCount);
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (recorded == windowSize) {
+            if (failedCalls[position]) {
+                failedInWindow--;
+            }
+            if (slowCalls[position]) {
+                slowInWindow--;
+            }
+        } else {
+            recorded++;
+        }
+        failedCalls[position] = failed;
+        slowCalls[position] = slow;
+        if (failed) {
+            failedInWindow++;
+        }
+        if (slow) {
+            slowInWindow++;
+        }
+        position = (position + 1) % windowSize;
+    }
+
+    private void transitionTo(State next) {
+        LOGGER.warning("EPA-Circuit-Breaker: " + state + " -> " + next);
+        state = next;
+        halfOpenPermits = 0;
+        halfOpenSucceeded = 0;
+        if (next == State.OPEN) {
+            openedAt = clock.getAsLong();
+            openedCount++;
+        } else if (next == State.CLOSED) {
+            resetWindow();
+        }
+    }
+
+    private void resetWindow() {
+        Arrays.fill(failedCalls, false);
+        Arrays.fill(slowCalls, false);
+        position = 0;
+        recorded = 0;
+        failedInWindow = 0;
+        slowInWindow = 0;
+    }
+}
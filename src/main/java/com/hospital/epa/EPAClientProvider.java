@@ -0,0 +1,120 @@
+package com.hospital.epa;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+
+/**
+ * Stellt einen anwendungsweit geteilten JAX-RS-Client mit Connection-Pool bereit.
+ * Verbindungen zur EPA werden per Keep-Alive wiederverwendet, statt pro Aufruf
+ * einen neuen Client samt TCP/TLS-Handshake aufzubauen. Da RESTEasy kein Lese-Timeout
+ * pro Request kennt, gibt es je Zeitlimit einen eigenen Client mit eigenem Pool; die
+ * Verbindungen entstehen erst bei Bedarf.
+ */
+@ApplicationScoped
+public class EPAClientProvider {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAClientProvider.class.getName());
+
+    // Pool-Größen (konfigurierbar über Umgebungsvariablen)
+    private static final int MAX_CONNECTIONS = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_MAX_CONNECTIONS", "50"));
+
+    private static final int MAX_CONNECTIONS_PER_ROUTE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_MAX_CONNECTIONS_PER_ROUTE", "20"));
+
+    // Wie lange eine Keep-Alive-Verbindung höchstens wiederverwendet wird
+    private static final long CONNECTION_TTL_SECONDS = 300;
+
+    // Maximale Wartezeit auf eine freie Verbindung aus dem Pool
+    private static final long CHECKOUT_TIMEOUT_SECONDS = 10;
+
+    // Standard-Timeout, falls epa_timeout_seconds nicht gesetzt ist
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    private static final int READ_TIMEOUT_FACTOR = 4;
+
+    @Inject
+    private EPAMetrics metrics;
+
+    @Inject
+    private EPAConfigService configService;
+
+    private volatile Client client;
+
+    // Clients je Lese-Timeout in Millisekunden, siehe getClient(Duration)
+    private final Map<Long, Client> clientsByReadTimeout = new ConcurrentHashMap<>();
+
+    private int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
+
+    @PostConstruct
+    void init() {
+        timeoutSeconds = configService != null
+                ? configService.getInt(EPAConfigService.TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS)
+                : DEFAULT_TIMEOUT_SECONDS;
+        // Das Lese-Timeout ist nur die Obergrenze; die Zeitlimits pro Operation
+        // (inkl. längerer Bundles) setzen die Clients aus getClient(Duration) durch
+        client = build(TimeUnit.SECONDS.toMillis(timeoutSeconds * READ_TIMEOUT_FACTOR));
+        if (metrics != null) {
+            metrics.registerPool(MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ROUTE);
+        }
+        LOGGER.info("EPA-Client initialisiert (Pool: " + MAX_CONNECTIONS + ", pro Route: "
+                + MAX_CONNECTIONS_PER_ROUTE + ", Timeout: " + timeoutSeconds + " s)");
+    }
+
+    private Client build(long readTimeoutMillis) {
+        ClientBuilder builder = ClientBuilder.newBuilder()
+                .connectTimeout(Math.min(TimeUnit.SECONDS.toMillis(timeoutSeconds), readTimeoutMillis),
+                        TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (builder instanceof ResteasyClientBuilder resteasy) {
+            resteasy.connectionPoolSize(MAX_CONNECTIONS)
+                    .maxPooledPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                    .connectionTTL(CONNECTION_TTL_SECONDS, TimeUnit.SECONDS)
+                    .connectionCheckoutTimeout(CHECKOUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } else {
+            LOGGER.warning("JAX-RS-Implementierung unterstützt keine Pool-Konfiguration: "
+                    + builder.getClass().getName());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Liefert den geteilten Client. Der Client darf vom Aufrufer nicht geschlossen werden.
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * Liefert den geteilten Client für ein Lese-Timeout (Zeit ohne Daten der EPA, nicht
+     * die Gesamtdauer). Der Client darf vom Aufrufer nicht geschlossen werden.
+     */
+    public Client getClient(Duration readTimeout) {
+        if (client == null) {
+            return null;
+        }
+        return clientsByReadTimeout.computeIfAbsent(readTimeout.toMillis(), this::build);
+    }
+
+    @PreDestroy
+    void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+        clientsByReadTimeout.values().forEach(Client::close);
+        clientsByReadTimeout.clear();
+    }
+}
@@ -0,0 +1,150 @@
+package com.hospital.epa;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import com.hospital.entity.EPAConfiguration;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Liest die EPA-Konfiguration aus der Tabelle epa_configuration.
+ * Die Werte liegen als unveränderlicher Snapshot im Speicher, Lesezugriffe
+ * kommen ohne Datenbankabfrage aus. Der Snapshot wird jede Minute (oder auf
+ * Anforderung) neu geladen und atomar ausgetauscht, Änderungen in der Tabelle
+ * wirken also ohne Redeploy. Nur das Laden läuft in einer Transaktion, die
+ * Getter werden pro Übertragung aufgerufen und brauchen keine.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPAConfigService {
+
+    public static final String RETRY_ATTEMPTS = "epa_retry_attempts";
+    public static final String TIMEOUT_SECONDS = "epa_timeout_seconds";
+    public static final String AUTO_SYNC = "epa_auto_sync";
+    public static final String SYNC_INTERVAL_MINUTES = "epa_sync_interval_minutes";
+    public static final String BASE_URL = "epa_base_url";
+    public static final String API_KEY = "epa_api_key";
+    public static final String SYNC_CONCURRENCY = "epa_sync_concurrency";
+    public static final String SYNC_JOB_DEADLINE_MINUTES = "epa_sync_job_deadline_minutes";
+    public static final String TRANSPORT = "epa_transport";
+    public static final String SYNC_CHECKPOINT_MAX_AGE_HOURS = "epa_sync_checkpoint_max_age_hours";
+
+    private static final Logger LOGGER = Logger.getLogger(EPAConfigService.class.getName());
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    private volatile Map<String, String> values = Map.of();
+
+    @PostConstruct
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    void load() {
+        reload();
+    }
+
+    /**
+     * Minütliches Neuladen; Timer-Callbacks müssen void liefern
+     */
+    @Schedule(hour = "*", minute = "*", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * Lädt epa_configuration neu und tauscht den Snapshot aus; liefert false,
+     * wenn die Tabelle nicht gelesen werden konnte (der alte Snapshot bleibt dann gültig)
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public boolean reload() {
+        if (em == null) {
+            return false;
+        }
+        try {
+            Map<String, String> loaded = new HashMap<>();
+            for (EPAConfiguration config : em.createNamedQuery("EPAConfiguration.findAll", EPAConfiguration.class)
+                    .getResultList()) {
+                if (config.getConfigValue() != null) {
+                    loaded.put(config.getConfigKey(), config.getConfigValue().trim());
+                }
+            }
+            Map<String, String> previous = values;
+            values = Map.copyOf(loaded);
+            logChanges(previous, values);
+            return true;
+        } catch (Exception e) {
+            LOGGER.warning("EPA-Konfiguration konnte nicht geladen werden, verwende bisherige Werte: "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    // Nur Schlüssel protokollieren, die Werte können Zugangsdaten enthalten
+    private void logChanges(Map<String, String> previous, Map<String, String> current) {
+        if (previous.isEmpty()) {
+            LOGGER.info(current.size() + " EPA-Konfigurationswerte geladen");
+            return;
+        }
+        Set<String> changed = new TreeSet<>();
+        current.forEach((key, value) -> {
+            if (!value.equals(previous.get(key))) {
+                changed.add(key);
+            }
+        });
+        previous.keySet().stream().filter(key -> !current.containsKey(key)).forEach(changed::add);
+        if (!changed.isEmpty()) {
+            LOGGER.info("EPA-Konfiguration geändert: " + String.join(", ", changed));
+        }
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Überschreibt einen Wert nur im Speicher, ohne ihn zu persistieren
+     */
+    void override(String key, String value) {
+        Map<String, String> updated = new HashMap<>(values);
+        updated.put(key, value);
+        values = Map.copyOf(updated);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null && !value.isEmpty() ? value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Ungültiger Wert für " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
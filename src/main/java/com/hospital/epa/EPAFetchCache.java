@@ -0,0 +1,180 @@
+package com.hospital.epa;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Begrenzter Cache für aus der EPA abgerufene FHIR-Patienten (Schlüssel: EPA-ID).
+ * Frische Einträge werden ohne EPA-Aufruf geliefert; abgelaufene Einträge gibt
+ * der Loader zur ETag-Revalidierung mit. Gleichzeitige Abrufe derselben EPA-ID
+ * teilen sich einen Request, eigene Updates invalidieren den Eintrag.
+ */
+@ApplicationScoped
+public class EPAFetchCache {
+
+    // Gültigkeit eines Eintrags ohne Revalidierung (konfigurierbar über Umgebungsvariablen)
+    private static final long TTL_SECONDS = Long.parseLong(System.getenv()
+            .getOrDefault("EPA_FETCH_CACHE_TTL_SECONDS", "60"));
+
+    private static final int MAX_ENTRIES = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_FETCH_CACHE_SIZE", "1000"));
+
+    /**
+     * Abgerufenes FHIR-Dokument mit optionalem ETag der EPA
+     */
+    public static final class Fetched {
+        private final String body;
+        private final String etag;
+
+        public Fetched(String body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private static final class Entry {
+        private final Fetched value;
+        private final long expiresAt;
+
+        private Entry(Fetched value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    // LRU: bei Überschreiten der Größe fällt der am längsten ungenutzte Eintrag heraus
+    private final Map<String, Entry> entries;
+
+    // Laufende Abrufe pro EPA-ID (Single-Flight)
+    private final Map<String, CompletableFuture<Fetched>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    public EPAFetchCache() {
+        this(TTL_SECONDS, MAX_ENTRIES, System::nanoTime);
+    }
+
+    EPAFetchCache(long ttlSeconds, int maxEntries, LongSupplier clock) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > EPAFetchCache.this.maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Liefert das Dokument zur EPA-ID oder null, wenn es nicht existiert.
+     * Der Loader erhält den abgelaufenen Eintrag (oder null) und liefert das
+     * aktuelle Dokument, bei unverändertem ETag denselben Eintrag, oder null.
+     */
+    public String get(String epaId, UnaryOperator<Fetched> loader) {
+        Entry entry = entries.get(epaId);
+        if (entry != null && clock.getAsLong() < entry.expiresAt) {
+            hits.increment();
+            return entry.value.getBody();
+        }
+
+        CompletableFuture<Fetched> mine = new CompletableFuture<>();
+        CompletableFuture<Fetched> running = inFlight.putIfAbsent(epaId, mine);
+        if (running != null) {
+            shared.increment();
+            Fetched fetched = await(running);
+            return fetched != null ? fetched.getBody() : null;
+        }
+
+        misses.increment();
+        Fetched stale = entry != null ? entry.value : null;
+        try {
+            Fetched fetched = loader.apply(stale);
+            if (fetched != null && fetched == stale) {
+                revalidated.increment();
+            }
+            // Nach einer Invalidierung während des Abrufs wird das Ergebnis nicht gespeichert
+            if (inFlight.remove(epaId, mine)) {
+                if (fetched != null) {
+                    entries.put(epaId, new Entry(fetched, clock.getAsLong() + ttlNanos));
+                } else {
+                    entries.remove(epaId);
+                }
+            }
+            mine.complete(fetched);
+            return fetched != null ? fetched.getBody() : null;
+        } catch (RuntimeException e) {
+            inFlight.remove(epaId, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Entfernt den Eintrag, z.B. nachdem wir den Patienten in der EPA aktualisiert haben
+     */
+    public void invalidate(String epaId) {
+        if (epaId == null) {
+            return;
+        }
+        entries.remove(epaId);
+        inFlight.remove(epaId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"size\": %d, \"maxEntries\": %d, \"ttlSeconds\": %d, \"hits\": %d, \"misses\": %d, "
+                        + "\"revalidated\": %d, \"shared\": %d}",
+                size(), maxEntries, TimeUnit.NANOSECONDS.toSeconds(ttlNanos), hits.sum(), misses.sum(),
+                revalidated.sum(), shared.sum());
+    }
+
+    private static Fetched await(CompletableFuture<Fetched> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
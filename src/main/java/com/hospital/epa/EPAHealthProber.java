@@ -0,0 +1,138 @@
+package com.hospital.epa;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+
+/**
+ * Prüft die Erreichbarkeit der EPA im Hintergrund und hält das letzte Ergebnis.
+ * Statusabfragen der Oberfläche werden aus diesem Zustand beantwortet, statt
+ * bei jedem Seitenaufruf einen Request an die EPA zu senden.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPAHealthProber {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAHealthProber.class.getName());
+
+    // Erzwungene Prüfungen (?force=true) höchstens so oft, sonst gilt das letzte Ergebnis
+    private static final long FORCE_MIN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Ergebnis einer Prüfung
+     */
+    public static final class Status {
+        private final boolean connected;
+        private final Instant checkedAt;
+        private final long latencyMillis;
+        private final long checkedAtNanos;
+
+        Status(boolean connected, Instant checkedAt, long latencyMillis, long checkedAtNanos) {
+            this.connected = connected;
+            this.checkedAt = checkedAt;
+            this.latencyMillis = latencyMillis;
+            this.checkedAtNanos = checkedAtNanos;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public Instant getCheckedAt() {
+            return checkedAt;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+
+    @Inject
+    private EPAIntegrationService epaService;
+
+    private final LongSupplier clock;
+
+    // Nur eine Prüfung gleichzeitig; weitere Aufrufer übernehmen deren Ergebnis
+    private final ReentrantLock probeLock = new ReentrantLock();
+
+    private volatile Status status;
+
+    public EPAHealthProber() {
+        this(System::nanoTime);
+    }
+
+    EPAHealthProber(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Regelmäßige Prüfung der EPA
+     */
+    @Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+    public void probe() {
+        if (!probeLock.tryLock()) {
+            return;
+        }
+        try {
+            runProbe();
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * Letztes Ergebnis; vor der ersten Prüfung oder mit force wird sofort geprüft
+     */
+    public Status getStatus(boolean force) {
+        Status current = status;
+        if (current != null && !(force && isOlderThan(current, FORCE_MIN_INTERVAL_NANOS))) {
+            return current;
+        }
+        probeLock.lock();
+        try {
+            // Während des Wartens hat ggf. ein anderer Aufrufer bereits geprüft
+            if (status != current) {
+                return status;
+            }
+            return runProbe();
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    /**
+     * Alter des Ergebnisses in Sekunden
+     */
+    public long getAgeSeconds(Status checked) {
+        return TimeUnit.NANOSECONDS.toSeconds(clock.getAsLong() - checked.checkedAtNanos);
+    }
+
+    private Status runProbe() {
+        long start = clock.getAsLong();
+        boolean connected = epaService.testEPAConnection();
+        long end = clock.getAsLong();
+        Status previous = status;
+        status = new Status(connected, Instant.now(), TimeUnit.NANOSECONDS.toMillis(end - start), end);
+        if (previous != null && previous.connected != connected) {
+            LOGGER.warning("EPA-Verbindung " + (connected ? "wiederhergestellt" : "verloren"));
+        }
+        return status;
+    }
+
+    private boolean isOlderThan(Status checked, long nanos) {
+        return clock.getAsLong() - checked.checkedAtNanos >= nanos;
+    }
+}
@@ -0,0 +1,134 @@
+package com.hospital.epa;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Alternativer Transport über java.net.http mit HTTP/2.
+ * Viele gleichzeitige Requests teilen sich per Multiplexing wenige Verbindungen;
+ * gewartet wird auf CompletableFutures statt auf blockierte Pool-Verbindungen.
+ * Spricht die EPA kein HTTP/2, fällt der Client automatisch auf HTTP/1.1 zurück.
+ */
+@ApplicationScoped
+public class EPAHttp2Transport implements EPATransport {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAHttp2Transport.class.getName());
+
+    // Standard-Verbindungsaufbau, falls epa_timeout_seconds nicht gesetzt ist
+    private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 30;
+
+    // Header, die java.net.http selbst setzt und nicht überschrieben werden dürfen
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "host");
+
+    @Inject
+    private EPAConfigService configService;
+
+    // Container-Threads für Antworten und abhängige Stufen; null außerhalb des Containers
+    @Resource
+    private ManagedExecutorService executor;
+
+    private volatile HttpClient client;
+
+    public EPAHttp2Transport() {
+    }
+
+    EPAHttp2Transport(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public CompletableFuture<EPAHttpResponse> send(String method, URI uri, Map<String, String> headers,
+            String body, Duration timeout) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(method, body != null
+                        ? HttpRequest.BodyPublishers.ofString(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        headers.forEach((name, value) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                request.header(name, value);
+            }
+        });
+        CompletableFuture<HttpResponse<String>> exchange = client().sendAsync(request.build(),
+                HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<EPAHttpResponse> result = exchange.thenApply(response -> new EPAHttpResponse(
+                response.statusCode(), response.body(), firstValues(response.headers())));
+        // Abhängige Stufen geben ein cancel nicht weiter: Abbruch selbst an den Austausch leiten
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "http2";
+    }
+
+    // Erst beim ersten Aufruf erzeugen: wird der Transport nicht genutzt, entsteht kein Client
+    private HttpClient client() {
+        HttpClient current = client;
+        if (current == null) {
+            synchronized (this) {
+                current = client;
+                if (current == null) {
+                    int connectTimeout = configService != null
+                            ? configService.getInt(EPAConfigService.TIMEOUT_SECONDS, DEFAULT_CONNECT_TIMEOUT_SECONDS)
+                            : DEFAULT_CONNECT_TIMEOUT_SECONDS;
+                    HttpClient.Builder builder = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_2)
+                            .connectTimeout(Duration.ofSeconds(connectTimeout))
+                            .followRedirects(HttpClient.Redirect.NEVER);
+                    if (executor != null) {
+                        builder.executor(executor);
+                    }
+                    current = builder.build();
+                    client = current;
+                    LOGGER.info("EPA-HTTP/2-Client initialisiert (Verbindungsaufbau: " + connectTimeout + " s)");
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Map<String, String> firstValues(HttpHeaders headers) {
+        Map<String, String> values = new HashMap<>();
+        headers.map().forEach((name, list) -> {
+            if (!list.isEmpty()) {
+                values.put(name, list.get(0));
+            }
+        });
+        return values;
+    }
+
+    @PreDestroy
+    void close() {
+        HttpClient current = client;
+        client = null;
+        // Ab Java 21 schließt close() die Verbindungen und wartet auf laufende Requests
+        if (current instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.warning("EPA-HTTP/2-Client konnte nicht geschlossen werden: " + e.getMessage());
+            }
+        }
+    }
+}
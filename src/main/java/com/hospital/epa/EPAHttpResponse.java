@@ -0,0 +1,36 @@
+package com.hospital.epa;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vollständig gelesene Antwort der EPA, unabhängig vom verwendeten HTTP-Transport
+ */
+public final class EPAHttpResponse {
+
+    private final int status;
+    private final String body;
+    private final Map<String, String> headers;
+
+    public EPAHttpResponse(int status, String body, Map<String, String> headers) {
+        this.status = status;
+        this.body = body;
+        // HTTP-Header sind unabhängig von Groß-/Kleinschreibung (HTTP/2 liefert sie klein)
+        Map<String, String> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        copy.putAll(headers);
+        this.headers = Collections.unmodifiableMap(copy);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+}
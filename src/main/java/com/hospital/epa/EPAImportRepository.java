@@ -0,0 +1,95 @@
+package com.hospital.epa;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.hospital.entity.Patient;
+
+import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Datenbankzugriffe des EPA-Imports: Abgleich und Anlage/Aktualisierung
+ * eines Blocks importierter Patienten in einer Transaktion.
+ */
+@Stateless
+public class EPAImportRepository {
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    @Inject
+    private FHIRConverter fhirConverter;
+
+    /**
+     * Gleicht die importierten Patienten (EPA-ID → Patient) mit dem Bestand ab, zuerst über
+     * epa_id, dann über insurance_number. Bekannte Patienten werden aktualisiert und die
+     * nächste Delta-Synchronisation überträgt sie zurück; neue Patienten werden als bereits
+     * synchronisiert angelegt.
+     */
+    public EPAImportResult upsert(Map<String, Patient> imported) {
+        EPAImportResult result = new EPAImportResult();
+        if (imported.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Patient> byEpaId = index(em.createNamedQuery("Patient.findByEpaIds", Patient.class)
+                .setParameter("epaIds", imported.keySet())
+                .getResultList(), Patient::getEpaId);
+        Map<String, Patient> byInsuranceNumber = index(em.createNamedQuery("Patient.findByInsuranceNumbers",
+                Patient.class)
+                .setParameter("insuranceNumbers", imported.values().stream().map(Patient::getInsuranceNumber).toList())
+                .getResultList(), Patient::getInsuranceNumber);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, Patient> entry : imported.entrySet()) {
+            String epaId = entry.getKey();
+            Patient source = entry.getValue();
+            Patient matchedByEpaId = byEpaId.get(epaId);
+            Patient matchedByInsurance = byInsuranceNumber.get(source.getInsuranceNumber());
+
+            if (matchedByEpaId != null && matchedByInsurance != null && matchedByEpaId != matchedByInsurance) {
+                result.recordFailure(epaId, "Versicherungsnummer " + source.getInsuranceNumber()
+                        + " gehört zu Patient " + matchedByInsurance.getId());
+            } else if (matchedByEpaId == null && matchedByInsurance != null && matchedByInsurance.getEpaId() != null) {
+                result.recordFailure(epaId, "Patient " + matchedByInsurance.getId()
+                        + " ist bereits mit EPA-ID " + matchedByInsurance.getEpaId() + " verknüpft");
+            } else if (matchedByEpaId != null || matchedByInsurance != null) {
+                Patient existing = matchedByEpaId != null ? matchedByEpaId : matchedByInsurance;
+                // Stationsdaten (Status, Aufnahme, Kontakte) bleiben unverändert
+                existing.setFirstName(source.getFirstName());
+                existing.setLastName(source.getLastName());
+                existing.setDateOfBirth(source.getDateOfBirth());
+                existing.setGender(source.getGender());
+                existing.setInsuranceNumber(source.getInsuranceNumber());
+                existing.setEpaId(epaId);
+                result.recordUpdated();
+            } else {
+                source.setEpaId(epaId);
+                source.setEpaSyncStatus("synced");
+                source.setEpaLastSync(now);
+                source.setEpaPayloadHash(FHIRConverter.payloadHash(fhirConverter.patientToFHIR(source)));
+                em.persist(source);
+                byEpaId.put(epaId, source);
+                byInsuranceNumber.put(source.getInsuranceNumber(), source);
+                result.recordCreated();
+            }
+        }
+        // Konflikte (z.B. doppelte Versicherungsnummer) innerhalb dieses Aufrufs melden
+        em.flush();
+        return result;
+    }
+
+    private static Map<String, Patient> index(List<Patient> patients, Function<Patient, String> key) {
+        Map<String, Patient> index = new HashMap<>();
+        for (Patient patient : patients) {
+            index.put(key.apply(patient), patient);
+        }
+        return index;
+    }
+}
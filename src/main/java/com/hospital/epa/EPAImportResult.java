@@ -0,0 +1,103 @@
+package com.hospital.epa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Result of a bulk import from the EPA.
+ * Counters are thread-safe so concurrent fetchers can record into one instance.
+ */
+public class EPAImportResult {
+
+    // Only the first errors are kept; the counters still cover all of them
+    private static final int MAX_ERRORS = 100;
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger updated = new AtomicInteger();
+    private final AtomicInteger notFound = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<String> errors = new ArrayList<>();
+
+    public void recordCreated() {
+        created.incrementAndGet();
+    }
+
+    public void recordUpdated() {
+        updated.incrementAndGet();
+    }
+
+    public void recordNotFound(String epaId) {
+        notFound.incrementAndGet();
+        addError(epaId, "nicht in der EPA gefunden");
+    }
+
+    public void recordFailure(String epaId, String message) {
+        failed.incrementAndGet();
+        addError(epaId, message);
+    }
+
+    /**
+     * Adds the counters and errors of a completed batch
+     */
+    public void merge(EPAImportResult other) {
+        created.addAndGet(other.created.get());
+        updated.addAndGet(other.updated.get());
+        notFound.addAndGet(other.notFound.get());
+        failed.addAndGet(other.failed.get());
+        synchronized (errors) {
+            for (String error : other.getErrors()) {
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+    }
+
+    private void addError(String epaId, String message) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(epaId + ": " + message);
+            }
+        }
+    }
+
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    public int getUpdatedCount() {
+        return updated.get();
+    }
+
+    public int getNotFoundCount() {
+        return notFound.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return List.copyOf(errors);
+        }
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"created\": ").append(created.get())
+                .append(", \"updated\": ").append(updated.get())
+                .append(", \"notFound\": ").append(notFound.get())
+                .append(", \"failed\": ").append(failed.get())
+                .append(", \"errors\": [");
+        List<String> snapshot = getErrors();
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append('"').append(snapshot.get(i).replace("\\", "\\\\").replace("\"", "'")).append('"');
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,317 @@
+package com.hospital.epa;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.hospital.entity.Patient;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import jakarta.json.stream.JsonParser;
+
+/**
+ * Massen-Import von Patienten aus der EPA, z.B. beim Anbinden einer neuen Station.
+ * Die Patienten werden parallel abgerufen (begrenzt auf epa_sync_concurrency gleichzeitige
+ * Requests), mit {@link FHIRConverter#fhirToPatient} konvertiert und blockweise mit dem
+ * Bestand abgeglichen (siehe {@link EPAImportRepository#upsert}).
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPAImportService {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAImportService.class.getName());
+
+    // Patienten pro Abruf- und Speicherblock (eine Transaktion pro Block)
+    private static final int IMPORT_BATCH_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_IMPORT_BATCH_SIZE", "100"));
+
+    // Höchstzahl Patienten pro Import-Request: der Import läuft synchron im Request-Thread,
+    // größere Bestände werden in mehreren Requests übernommen
+    private static final int IMPORT_MAX_PATIENTS = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_IMPORT_MAX_PATIENTS", "1000"));
+
+    // Standard für epa_sync_concurrency, wie in EPAIntegrationService
+    private static final int SYNC_CONCURRENCY = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_SYNC_CONCURRENCY", "16"));
+
+    @Inject
+    private EPAIntegrationService epaService;
+
+    @Inject
+    private EPAImportRepository repository;
+
+    @Inject
+    private FHIRConverter fhirConverter;
+
+    @Inject
+    private EPAConfigService configService;
+
+    // Container-Threads für die parallelen Abrufe; null außerhalb des Containers
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    /**
+     * Ruft die Patienten mit den angegebenen EPA-IDs ab und übernimmt sie
+     *
+     * @throws IllegalArgumentException bei mehr als EPA_IMPORT_MAX_PATIENTS IDs
+     */
+    public EPAImportResult importByEpaIds(List<String> epaIds) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(epaIds.stream()
+                .filter(id -> id != null && !id.isBlank())
+                .map(String::trim)
+                .toList()));
+        checkLimit(distinct.size());
+        LOGGER.info("EPA-Import von " + distinct.size() + " Patienten gestartet");
+
+        EPAImportResult result = new EPAImportResult();
+        for (int from = 0; from < distinct.size(); from += IMPORT_BATCH_SIZE) {
+            List<String> batch = distinct.subList(from, Math.min(from + IMPORT_BATCH_SIZE, distinct.size()));
+            Map<String, String> fetched = fetchAll(batch, result);
+
+            Map<String, JsonObject> resources = new LinkedHashMap<>();
+            for (String epaId : batch) {
+                String body = fetched.get(epaId);
+                if (body == null) {
+                    continue;
+                }
+                JsonObject resource = readObject(body);
+                if (resource == null) {
+                    result.recordFailure(epaId, "Ungültiges FHIR-Dokument");
+                } else {
+                    resources.put(epaId, resource);
+                }
+            }
+            store(resources, result);
+        }
+        return log(result);
+    }
+
+    /**
+     * Übernimmt die Patienten aus einem FHIR-Suchergebnis (Bundle) oder einem
+     * $export-Ergebnis (NDJSON, eine Patient-Resource pro Zeile)
+     *
+     * @throws IllegalArgumentException wenn der Inhalt kein gültiges JSON ist oder mehr als
+     *                                  EPA_IMPORT_MAX_PATIENTS Patienten enthält
+     */
+    public EPAImportResult importFromFhir(String content) {
+        List<JsonObject> resources = parseResources(content);
+        checkLimit(resources.size());
+        LOGGER.info("EPA-Import von " + resources.size() + " FHIR-Resourcen gestartet");
+
+        EPAImportResult result = new EPAImportResult();
+        for (int from = 0; from < resources.size(); from += IMPORT_BATCH_SIZE) {
+            Map<String, JsonObject> batch = new LinkedHashMap<>();
+            for (JsonObject resource : resources.subList(from, Math.min(from + IMPORT_BATCH_SIZE, resources.size()))) {
+                String epaId = resource.getString("id", null);
+                if (epaId == null || epaId.isBlank()) {
+                    result.recordFailure("?", "Patient-Resource ohne id");
+                } else {
+                    batch.put(epaId, resource);
+                }
+            }
+            store(batch, result);
+        }
+        return log(result);
+    }
+
+    private static void checkLimit(int patients) {
+        if (patients > IMPORT_MAX_PATIENTS) {
+            throw new IllegalArgumentException("Zu viele Patienten für einen Import: " + patients
+                    + " (höchstens " + IMPORT_MAX_PATIENTS + ")");
+        }
+    }
+
+    // Bundle (entry[].resource), einzelne Resource oder NDJSON; nur Patient-Resourcen
+    static List<JsonObject> parseResources(String content) {
+        List<JsonObject> resources = new ArrayList<>();
+        if (content == null || content.isBlank()) {
+            return resources;
+        }
+        // NDJSON, wenn jede Zeile ein JSON-Objekt ist; sonst ein (mehrzeiliges) Dokument
+        List<JsonObject> documents = new ArrayList<>();
+        for (String line : content.split("\\R")) {
+            if (!line.isBlank()) {
+                JsonObject resource = readObject(line);
+                if (resource == null) {
+                    documents.clear();
+                    break;
+                }
+                documents.add(resource);
+            }
+        }
+        if (documents.isEmpty()) {
+            JsonObject document = readObject(content);
+            if (document == null) {
+                throw new IllegalArgumentException("Ungültiges FHIR-Dokument");
+            }
+            documents.add(document);
+        }
+        for (JsonObject resource : documents) {
+            if ("Bundle".equals(resource.getString("resourceType", null))) {
+                addPatients(resource.getJsonArray("entry"), resources);
+            } else if ("Patient".equals(resource.getString("resourceType", null))) {
+                resources.add(resource);
+            }
+        }
+        return resources;
+    }
+
+    private static void addPatients(JsonArray entries, List<JsonObject> resources) {
+        if (entries == null) {
+            return;
+        }
+        for (JsonValue entry : entries) {
+            JsonObject resource = entry.getValueType() == JsonValue.ValueType.OBJECT
+                    ? entry.asJsonObject().getJsonObject("resource")
+                    : null;
+            if (resource != null && "Patient".equals(resource.getString("resourceType", null))) {
+                resources.add(resource);
+            }
+        }
+    }
+
+    // null, wenn der Text kein einzelnes JSON-Objekt ist
+    private static JsonObject readObject(String json) {
+        try (JsonParser parser = Json.createParser(new StringReader(json))) {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                return null;
+            }
+            JsonObject object = parser.getObject();
+            // Der JsonReader ignoriert Text nach dem ersten Objekt
+            return parser.hasNext() ? null : object;
+        } catch (JsonException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ruft alle Patienten parallel ab; nicht gefundene werden im Ergebnis gezählt
+     */
+    private Map<String, String> fetchAll(List<String> epaIds, EPAImportResult result) {
+        Map<String, String> fetched = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(Math.max(1,
+                configService.getInt(EPAConfigService.SYNC_CONCURRENCY, SYNC_CONCURRENCY)));
+
+        ExecutorService executor = EPASyncEngine.newExecutor(threadFactory);
+        try {
+            for (String epaId : epaIds) {
+                // Vor dem Start warten, damit nie mehr Abrufe als erlaubt gleichzeitig laufen
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        String body = epaService.getPatientFromEPA(epaId);
+                        if (body == null) {
+                            result.recordNotFound(epaId);
+                        } else {
+                            fetched.put(epaId, body);
+                        }
+                    } catch (RuntimeException e) {
+                        result.recordFailure(epaId, "Technischer Fehler: " + e.getMessage());
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("EPA-Import unterbrochen");
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+        return fetched;
+    }
+
+    /**
+     * Konvertiert einen Block und speichert ihn in einer Transaktion
+     */
+    private void store(Map<String, JsonObject> resources, EPAImportResult result) {
+        Map<String, Patient> patients = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonObject> entry : resources.entrySet()) {
+            try {
+                Patient patient = fhirConverter.fhirToPatient(entry.getValue());
+                String missing = missingFields(patient);
+                if (missing != null) {
+                    result.recordFailure(entry.getKey(), "Pflichtfeld fehlt: " + missing);
+                } else {
+                    patients.put(entry.getKey(), patient);
+                }
+            } catch (RuntimeException e) {
+                result.recordFailure(entry.getKey(), "Nicht konvertierbar: " + e.getMessage());
+            }
+        }
+        if (patients.isEmpty()) {
+            return;
+        }
+        try {
+            result.merge(repository.upsert(patients));
+        } catch (RuntimeException e) {
+            LOGGER.severe("Fehler beim Speichern eines Import-Blocks: " + e.getMessage());
+            for (String epaId : patients.keySet()) {
+                result.recordFailure(epaId, "Speichern fehlgeschlagen: " + e.getMessage());
+            }
+        }
+    }
+
+    // Pflichtfelder der Tabelle patients; ohne Geschlecht gilt "Unbekannt"
+    private static String missingFields(Patient patient) {
+        if (patient.getGender() == null) {
+            patient.setGender("Unbekannt");
+        }
+        if (isBlank(patient.getLastName()) || isBlank(patient.getFirstName())) {
+            return "name";
+        }
+        if (patient.getDateOfBirth() == null) {
+            return "birthDate";
+        }
+        if (isBlank(patient.getInsuranceNumber())) {
+            return "identifier";
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static EPAImportResult log(EPAImportResult result) {
+        LOGGER.info("EPA-Import abgeschlossen: " + result.getCreatedCount() + " angelegt, "
+                + result.getUpdatedCount() + " aktualisiert, " + result.getNotFoundCount() + " nicht gefunden, "
+                + result.getFailedCount() + " fehlgeschlagen");
+        return result;
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,63 +1,136 @@
 package com.hospital.epa;
 
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 
 import com.hospital.entity.Patient;
 
+import jakarta.annotation.Resource;
+import jakarta.ejb.SessionContext;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.inject.Inject;
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
-import jakarta.ws.rs.client.Entity;
-import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.Response;
+import jakarta.json.Json;
+import jakarta.json.JsonReader;
+import jakarta.ws.rs.ProcessingException;
 
 /**
  * Service für die Kommunikation mit der elektronischen Patientenakte (EPA)
  * Unterstützt FHIR-Standard für Interoperabilität
  */
 @Stateless
+// Keine Datenbankarbeit: lange Massen-Synchronisationen dürfen nicht in ein JTA-Timeout laufen
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 public class EPAIntegrationService {
 
     private static final Logger LOGGER = Logger.getLogger(EPAIntegrationService.class.getName());
 
-    // EPA-System Basis-URL (konfigurierbar über Umgebungsvariablen)
-    private static final String EPA_BASE_URL = System.getenv()
-            .getOrDefault("EPA_BASE_URL", "https://epa-system.example.com/api");
+    // EPA-System Basis-URL und API-Key: gesetzte Umgebungsvariablen haben Vorrang vor
+    // epa_configuration (epa_base_url, epa_api_key), damit bestehende Deployments unverändert bleiben
+    private static final String EPA_BASE_URL = System.getenv("EPA_BASE_URL");
 
-    private static final String EPA_API_KEY = System.getenv()
-            .getOrDefault("EPA_API_KEY", "your-api-key");
+    private static final String EPA_API_KEY = System.getenv("EPA_API_KEY");
+
+    private static final String DEFAULT_BASE_URL = "https://epa-system.example.com/api";
+
+    // Maximale Anzahl gleichzeitiger EPA-Aufrufe bei der Massen-Synchronisation
+    // (Standard für epa_sync_concurrency)
+    private static final int SYNC_CONCURRENCY = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_SYNC_CONCURRENCY", "16"));
+
+    // Anzahl Patienten pro FHIR-Bundle beim gebündelten Upload
+    private static final int BUNDLE_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_BUNDLE_SIZE", "100"));
+
+    // Zeitlimits, falls epa_timeout_seconds bzw. epa_timeout_seconds_<operation> nicht gesetzt sind
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int HEALTH_TIMEOUT_SECONDS = 5;
+    private static final int BUNDLE_TIMEOUT_FACTOR = 4;
+
+    // HTTP-Transport, falls epa_transport nicht gesetzt ist: jaxrs (HTTP/1.1-Pool) oder http2
+    private static final String TRANSPORT = System.getenv()
+            .getOrDefault("EPA_TRANSPORT", "jaxrs");
+
+    // batch: Einträge unabhängig voneinander, transaction: alles oder nichts
+    private static final String BUNDLE_TYPE = System.getenv()
+            .getOrDefault("EPA_BUNDLE_TYPE", "batch");
+
+    // Operationen, deren Wiederholung keine Duplikate erzeugt: Anlegen ist bedingt (If-None-Exist),
+    // Bundles enthalten nur PUT- und bedingte POST-Einträge. Nur diese wiederholen 502/504.
+    private static final Set<String> IDEMPOTENT_OPERATIONS = Set.of("fetch", "update", "health", "create", "bundle");
+
+    // Zulässige FHIR-Ressourcen-ID (FHIR R4 "id"-Datentyp)
+    private static final Pattern FHIR_ID = Pattern.compile("[A-Za-z0-9\\-.]{1,64}");
 
     @Inject
     private FHIRConverter fhirConverter;
 
+    @Inject
+    private EPAJaxRsTransport jaxRsTransport;
+
+    @Inject
+    private EPAHttp2Transport http2Transport;
+
+    @Inject
+    private EPAMetrics metrics;
+
+    @Inject
+    private EPACircuitBreaker circuitBreaker;
+
+    @Inject
+    private EPAConfigService configService;
+
+    @Inject
+    private EPARateLimiter rateLimiter;
+
+    @Inject
+    private EPASyncLogWriter syncLog;
+
+    @Inject
+    private EPAFetchCache fetchCache;
+
+    // Container-Threads für die Massen-Synchronisation; null außerhalb des Containers
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    // Nur für Tests: fester Endpunkt mit Vorrang vor EPA_BASE_URL/EPA_API_KEY
+    private volatile String testBaseUrl;
+    private volatile String testApiKey;
+
     /**
-     * Sendet Patientendaten an die EPA
+     * Sendet Patientendaten an die EPA: bekannte Patienten per PUT, neue per bedingtem Anlegen
      */
     public EPAResponse sendPatientToEPA(Patient patient) {
         LOGGER.info("Sende Patient " + patient.getId() + " an EPA");
 
         try {
             // Konvertiere Patient zu FHIR-Format
-            String fhirPatient = fhirConverter.patientToFHIR(patient);
-
-            Client client = ClientBuilder.newClient();
-            Response response = client.target(EPA_BASE_URL + "/Patient")
-                    .request(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + EPA_API_KEY)
-                    .header("Content-Type", "application/fhir+json")
-                    .post(Entity.json(fhirPatient));
-
-            if (response.getStatus() == 201 || response.getStatus() == 200) {
-                String epaId = response.readEntity(String.class);
-                LOGGER.info("Patient erfolgreich an EPA gesendet. EPA-ID: " + epaId);
-                return new EPAResponse(true, epaId, "Patient erfolgreich übertragen");
-            } else {
-                String error = response.readEntity(String.class);
-                LOGGER.warning("EPA-Fehler: " + error);
-                return new EPAResponse(false, null, "Fehler bei EPA-Übertragung: " + error);
-            }
-
+            return upsert(patient, fhirConverter.patientToFHIR(patient));
         } catch (Exception e) {
             LOGGER.severe("Fehler bei EPA-Übertragung: " + e.getMessage());
             return new EPAResponse(false, null, "Technischer Fehler: " + e.getMessage());
@@ -71,23 +144,9 @@ public class EPAIntegrationService {
         LOGGER.info("Aktualisiere Patient " + patient.getId() + " in EPA (EPA-ID: " + epaId + ")");
 
         try {
-            String fhirPatient = fhirConverter.patientToFHIR(patient);
-
-            Client client = ClientBuilder.newClient();
-            Response response = client.target(EPA_BASE_URL + "/Patient/" + epaId)
-                    .request(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + EPA_API_KEY)
-                    .header("Content-Type", "application/fhir+json")
-                    .put(Entity.json(fhirPatient));
-
-            if (response.getStatus() == 200) {
-                LOGGER.info("Patient erfolgreich in EPA aktualisiert");
-                return new EPAResponse(true, epaId, "Patient erfolgreich aktualisiert");
-            } else {
-                String error = response.readEntity(String.class);
-                return new EPAResponse(false, null, "Fehler bei EPA-Update: " + error);
-            }
-
+            EPAResponse response = update(patient, epaId, fhirConverter.patientToFHIR(patient));
+            return response != null ? response
+                    : new EPAResponse(false, null, "Patient mit EPA-ID " + epaId + " nicht in EPA gefunden");
         } catch (Exception e) {
             LOGGER.severe("Fehler bei EPA-Update: " + e.getMessage());
             return new EPAResponse(false, null, "Technischer Fehler: " + e.getMessage());
@@ -95,48 +154,292 @@ public class EPAIntegrationService {
     }
 
     /**
-     * Ruft Patientendaten aus der EPA ab
+     * Synchronisiert einen Patienten: unveränderte FHIR-Dokumente (gleicher Hash
+     * wie bei der letzten erfolgreichen Übertragung) werden ohne EPA-Aufruf
+     * übersprungen, bekannte Patienten aktualisiert, neue angelegt.
      */
-    public String getPatientFromEPA(String epaId) {
-        LOGGER.info("Rufe Patient mit EPA-ID " + epaId + " ab");
+    public EPAResponse syncPatient(Patient patient) {
+        return syncPatient(patient, null);
+    }
 
+    /**
+     * Wie {@link #syncPatient(Patient)} mit bereits konvertiertem FHIR-Dokument
+     * (null: wird hier konvertiert)
+     */
+    public EPAResponse syncPatient(Patient patient, String payload) {
         try {
-            Client client = ClientBuilder.newClient();
-            Response response = client.target(EPA_BASE_URL + "/Patient/" + epaId)
-                    .request(MediaType.APPLICATION_JSON)
-                    .header("Authorization", "Bearer " + EPA_API_KEY)
-                    .get();
-
-            if (response.getStatus() == 200) {
-                return response.readEntity(String.class);
-            } else {
-                LOGGER.warning("Patient nicht in EPA gefunden");
-                return null;
+            String fhirPatient = payload != null ? payload : fhirConverter.patientToFHIR(patient);
+            if (isUnchanged(patient, fhirPatient)) {
+                return EPAResponse.skipped(patient.getEpaId(), patient.getEpaPayloadHash());
             }
+            return upsert(patient, fhirPatient);
+        } catch (Exception e) {
+            LOGGER.severe("Fehler bei EPA-Synchronisation: " + e.getMessage());
+            return new EPAResponse(false, null, "Technischer Fehler: " + e.getMessage());
+        }
+    }
 
+    // Ohne EPA-ID muss immer gesendet werden, auch wenn ein Hash gespeichert ist
+    private boolean isUnchanged(Patient patient, String fhirPatient) {
+        return patient.getEpaId() != null && patient.getEpaPayloadHash() != null
+                && patient.getEpaPayloadHash().equals(FHIRConverter.payloadHash(fhirPatient));
+    }
+
+    // PUT mit bekannter EPA-ID; ist sie in der EPA unbekannt (404/410), wird bedingt neu angelegt
+    private EPAResponse upsert(Patient patient, String fhirPatient) {
+        if (patient.getEpaId() != null) {
+            EPAResponse updated = update(patient, patient.getEpaId(), fhirPatient);
+            if (updated != null) {
+                return updated;
+            }
+            LOGGER.warning("EPA-ID " + patient.getEpaId() + " von Patient " + patient.getId()
+                    + " nicht in EPA gefunden, lege Patient neu an");
+        }
+        return create(patient, fhirPatient);
+    }
+
+    // Bedingtes Anlegen: existiert die Versicherungsnummer bereits, antwortet die EPA mit 200
+    // und dem vorhandenen Patienten, statt ein Duplikat anzulegen
+    private EPAResponse create(Patient patient, String fhirPatient) {
+        return invoke("create", patient.getId(),
+                () -> send("create", "POST", "/Patient", fhirPatient,
+                        Map.of("If-None-Exist", FHIRConverter.conditionalCreateQuery(patient))),
+                response -> {
+                    if (response.getStatus() == 201 || response.getStatus() == 200) {
+                        String epaId = createdId(response);
+                        if (epaId == null) {
+                            // Ohne ID wäre der Patient nicht zuzuordnen; das bedingte Anlegen
+                            // findet ihn beim nächsten Versuch über die Versicherungsnummer
+                            LOGGER.warning("EPA-Antwort für Patient " + patient.getId() + " enthält keine EPA-ID");
+                            return new EPAResponse(false, null, "EPA-Antwort enthält keine gültige EPA-ID");
+                        }
+                        LOGGER.info("Patient erfolgreich an EPA gesendet. EPA-ID: " + epaId);
+                        return new EPAResponse(true, epaId, "Patient erfolgreich übertragen")
+                                .withPayloadHash(FHIRConverter.payloadHash(fhirPatient));
+                    } else {
+                        String error = response.getBody();
+                        LOGGER.warning("EPA-Fehler: " + error);
+                        return new EPAResponse(false, null, "Fehler bei EPA-Übertragung: " + error);
+                    }
+                });
+    }
+
+    private EPAResponse update(Patient patient, String epaId, String fhirPatient) {
+        return invoke("update", patient.getId(),
+                () -> send("update", "PUT", "/Patient/" + epaId, fhirPatient, Map.of()),
+                response -> {
+                    // Zwischengespeicherter Abruf ist nach unserem Update nicht mehr aktuell
+                    fetchCache.invalidate(epaId);
+                    if (response.getStatus() == 404 || response.getStatus() == 410) {
+                        return null;
+                    } else if (response.getStatus() == 200 || response.getStatus() == 201) {
+                        LOGGER.info("Patient erfolgreich in EPA aktualisiert");
+                        return new EPAResponse(true, epaId, "Patient erfolgreich aktualisiert")
+                                .withPayloadHash(FHIRConverter.payloadHash(fhirPatient));
+                    } else {
+                        return new EPAResponse(false, null, "Fehler bei EPA-Update: " + response.getBody());
+                    }
+                });
+    }
+
+    // EPA-ID aus dem Location-Header ("Patient/123/_history/1"), sonst aus der Resource im Body;
+    // ältere EPA-Versionen liefern nur die ID als Text. Alles, was keine gültige FHIR-ID ist
+    // (z.B. eine Fehlerseite), ergibt null statt in epa_id (varchar(100)) zu landen.
+    private static String createdId(EPAHttpResponse response) {
+        String epaId = FHIRConverter.extractPatientId(response.getHeader("Location"));
+        if (epaId == null) {
+            epaId = FHIRConverter.extractPatientId(response.getHeader("Content-Location"));
+        }
+        String body = response.getBody();
+        if (epaId == null && body != null && body.trim().startsWith("{")) {
+            try (JsonReader reader = Json.createReader(new StringReader(body))) {
+                epaId = reader.readObject().getString("id", null);
+            } catch (RuntimeException e) {
+                LOGGER.fine("Antwort der EPA enthält keine Patient-Resource: " + e.getMessage());
+            }
+        }
+        if (epaId == null && body != null) {
+            epaId = body.trim();
+        }
+        return epaId != null && FHIR_ID.matcher(epaId).matches() ? epaId : null;
+    }
+
+    /**
+     * Ruft Patientendaten aus der EPA ab. Ergebnisse werden für kurze Zeit
+     * zwischengespeichert und danach per ETag revalidiert.
+     */
+    public String getPatientFromEPA(String epaId) {
+        LOGGER.info("Rufe Patient mit EPA-ID " + epaId + " ab");
+
+        try {
+            return fetchCache.get(epaId, stale -> fetch(epaId, stale));
         } catch (Exception e) {
             LOGGER.severe("Fehler beim EPA-Abruf: " + e.getMessage());
             return null;
         }
     }
 
+    private EPAFetchCache.Fetched fetch(String epaId, EPAFetchCache.Fetched stale) {
+        return invoke("fetch", null,
+                () -> send("fetch", "GET", "/Patient/" + epaId, null,
+                        stale != null && stale.getEtag() != null
+                                ? Map.of("If-None-Match", stale.getEtag())
+                                : Map.of()),
+                response -> {
+                    if (response.getStatus() == 304 && stale != null) {
+                        return stale;
+                    } else if (response.getStatus() == 200) {
+                        return new EPAFetchCache.Fetched(response.getBody(), response.getHeader("ETag"));
+                    } else {
+                        LOGGER.warning("Patient nicht in EPA gefunden");
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Synchronisiert alle aktiven Patienten mit der EPA.
+     * Die Aufrufe laufen parallel, begrenzt auf EPA_SYNC_CONCURRENCY gleichzeitige Requests;
+     * unveränderte Patienten werden übersprungen (siehe {@link #syncPatient(Patient)}).
+     */
+    public EPASyncResult syncAllPatientsToEPA(List<Patient> patients) {
+        return syncAllPatientsToEPA(patients, (patient, response) -> {
+        });
+    }
+
+    /**
+     * Wie {@link #syncAllPatientsToEPA(List)}, meldet zusätzlich jedes Einzelergebnis
+     */
+    public EPASyncResult syncAllPatientsToEPA(List<Patient> patients,
+            BiConsumer<Patient, EPAResponse> onResult) {
+        return syncAllPatientsToEPA(patients, onResult, () -> false);
+    }
+
+    /**
+     * Abbrechbare Variante; nach einem Abbruch werden keine weiteren Patienten gesendet
+     */
+    public EPASyncResult syncAllPatientsToEPA(List<Patient> patients,
+            BiConsumer<Patient, EPAResponse> onResult, BooleanSupplier cancelled) {
+        return syncAllPatientsToEPA(patients, patient -> null, onResult, cancelled);
+    }
+
+    /**
+     * Wie oben mit vorab konvertierten FHIR-Dokumenten (siehe {@link EPASyncPipeline});
+     * payloads liefert null für Patienten, die hier konvertiert werden sollen
+     */
+    public EPASyncResult syncAllPatientsToEPA(List<Patient> patients, Function<Patient, String> payloads,
+            BiConsumer<Patient, EPAResponse> onResult, BooleanSupplier cancelled) {
+        EPAIntegrationService self = self();
+        return new EPASyncEngine(configService.getInt(EPAConfigService.SYNC_CONCURRENCY, SYNC_CONCURRENCY),
+                patient -> self.syncPatient(patient, payloads.apply(patient)), threadFactory)
+                .run(patients, onResult, cancelled);
+    }
+
+    /**
+     * Sendet mehrere Patienten als FHIR transaction/batch-Bundle in einem Request.
+     * Liefert pro Patient (gleiche Reihenfolge) ein Ergebnis mit der EPA-ID.
+     */
+    public List<EPAResponse> sendPatientBundle(List<Patient> patients) {
+        LOGGER.info("Sende Bundle mit " + patients.size() + " Patienten an EPA");
+
+        try {
+            String bundle = fhirConverter.createTransactionBundle(patients, BUNDLE_TYPE);
+
+            return invoke("bundle", null,
+                    () -> send("bundle", "POST", "", bundle, Map.of()),
+                    response -> {
+                        if (response.getStatus() == 200) {
+                            List<EPAResponse> results = fhirConverter
+                                    .parseBundleResponse(response.getBody());
+                            return completeResults(results, patients.size());
+                        } else {
+                            String error = response.getBody();
+                            LOGGER.warning("EPA-Fehler bei Bundle: " + error);
+                            return failAll(patients.size(), "Fehler bei EPA-Bundle-Übertragung: " + error);
+                        }
+                    });
+
+        } catch (Exception e) {
+            LOGGER.severe("Fehler bei EPA-Bundle-Übertragung: " + e.getMessage());
+            return failAll(patients.size(), "Technischer Fehler: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Synchronisiert Patienten gebündelt mit einem Request pro EPA_BUNDLE_SIZE Patienten
+     */
+    public EPASyncResult syncAllPatientsInBundles(List<Patient> patients,
+            BiConsumer<Patient, EPAResponse> onResult) {
+        return syncAllPatientsInBundles(patients, onResult, () -> false);
+    }
+
     /**
-     * Synchronisiert alle aktiven Patienten mit der EPA
+     * Abbrechbare Variante; der Abbruch greift vor dem nächsten Bundle
      */
-    public EPASyncResult syncAllPatientsToEPA(java.util.List<Patient> patients) {
-        int success = 0;
-        int failed = 0;
+    public EPASyncResult syncAllPatientsInBundles(List<Patient> patients,
+            BiConsumer<Patient, EPAResponse> onResult, BooleanSupplier cancelled) {
+        return syncAllPatientsInBundles(patients, patient -> null, onResult, cancelled);
+    }
 
-        for (Patient patient : patients) {
-            EPAResponse response = sendPatientToEPA(patient);
-            if (response.isSuccess()) {
-                success++;
+    /**
+     * Wie oben; die vorab konvertierten FHIR-Dokumente dienen der Erkennung unveränderter Patienten
+     */
+    public EPASyncResult syncAllPatientsInBundles(List<Patient> patients, Function<Patient, String> payloads,
+            BiConsumer<Patient, EPAResponse> onResult, BooleanSupplier cancelled) {
+        EPASyncResult result = new EPASyncResult();
+        for (int from = 0; from < patients.size() && !cancelled.getAsBoolean(); from += BUNDLE_SIZE) {
+            List<Patient> chunk = patients.subList(from, Math.min(from + BUNDLE_SIZE, patients.size()));
+            List<EPAResponse> responses = sendChangedInBundle(chunk, payloads);
+            for (int i = 0; i < chunk.size(); i++) {
+                EPAResponse response = responses.get(i);
+                result.record(response);
+                onResult.accept(chunk.get(i), response);
+            }
+        }
+        return result;
+    }
+
+    // Nur geänderte Patienten kommen ins Bundle; Ergebnisse in Eingabereihenfolge
+    private List<EPAResponse> sendChangedInBundle(List<Patient> chunk, Function<Patient, String> payloads) {
+        EPAResponse[] responses = new EPAResponse[chunk.size()];
+        String[] hashes = new String[chunk.size()];
+        List<Patient> changed = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Patient patient = chunk.get(i);
+            String payload = payloads.apply(patient);
+            hashes[i] = FHIRConverter.payloadHash(payload != null ? payload : fhirConverter.patientToFHIR(patient));
+            if (patient.getEpaId() != null && hashes[i].equals(patient.getEpaPayloadHash())) {
+                responses[i] = EPAResponse.skipped(patient.getEpaId(), hashes[i]);
             } else {
-                failed++;
+                changed.add(patient);
             }
         }
+        List<EPAResponse> sent = changed.isEmpty() ? List.of() : sendPatientBundle(changed);
+        int next = 0;
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i] == null) {
+                EPAResponse response = sent.get(next++);
+                responses[i] = response.isSuccess() ? response.withPayloadHash(hashes[i]) : response;
+            }
+        }
+        return List.of(responses);
+    }
 
-        return new EPASyncResult(success, failed);
+    // Fehlende Antwort-Einträge gelten als fehlgeschlagen
+    private List<EPAResponse> completeResults(List<EPAResponse> results, int expected) {
+        List<EPAResponse> complete = new ArrayList<>(results.subList(0, Math.min(results.size(), expected)));
+        while (complete.size() < expected) {
+            complete.add(new EPAResponse(false, null, "Keine Antwort für Bundle-Eintrag"));
+        }
+        return complete;
+    }
+
+    private List<EPAResponse> failAll(int count, String message) {
+        List<EPAResponse> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new EPAResponse(false, null, message));
+        }
+        return results;
     }
 
     /**
@@ -144,16 +447,231 @@ public class EPAIntegrationService {
      */
     public boolean testEPAConnection() {
         try {
-            Client client = ClientBuilder.newClient();
-            Response response = client.target(EPA_BASE_URL + "/health")
-                    .request()
-                    .header("Authorization", "Bearer " + EPA_API_KEY)
-                    .get();
-
-            return response.getStatus() == 200;
+            return invoke("health", null,
+                    () -> send("health", "GET", "/health", null, Map.of()),
+                    response -> response.getStatus() == 200);
         } catch (Exception e) {
             LOGGER.severe("EPA-Verbindungstest fehlgeschlagen: " + e.getMessage());
             return false;
         }
     }
+
+    /**
+     * Sendet eine authentifizierte Anfrage über den konfigurierten Transport
+     * (epa_transport: jaxrs oder http2)
+     */
+    private CompletableFuture<EPAHttpResponse> send(String operation, String method, String path, String body,
+            Map<String, String> extraHeaders) {
+        Map<String, String> headers = new HashMap<>(extraHeaders);
+        headers.put("Authorization", "Bearer " + apiKey());
+        headers.put("Accept", "health".equals(operation) ? "*/*" : "application/json");
+        if (body != null) {
+            headers.put("Content-Type", "application/fhir+json");
+        }
+        return transport().send(method, URI.create(baseUrl() + path), headers, body,
+                Duration.ofMillis(timeoutMillis(operation)));
+    }
+
+    // Parallele Aufrufe laufen über den Business-Proxy, damit jeder Thread eine eigene
+    // Bean-Instanz mit Interceptoren und Transaktionsattribut erhält
+    private EPAIntegrationService self() {
+        return sessionContext != null ? sessionContext.getBusinessObject(EPAIntegrationService.class) : this;
+    }
+
+    private EPATransport transport() {
+        String name = configService.getString(EPAConfigService.TRANSPORT, TRANSPORT);
+        return http2Transport.getName().equalsIgnoreCase(name) ? http2Transport : jaxRsTransport;
+    }
+
+    /**
+     * Leitet alle Aufrufe an einen lokalen Endpunkt (z.B. {@link EPASimulator}) um, auch wenn
+     * EPA_BASE_URL und EPA_API_KEY gesetzt sind; verhindert Testaufrufe gegen die echte EPA
+     */
+    void useTestEndpoint(String baseUrl, String apiKey) {
+        this.testBaseUrl = baseUrl;
+        this.testApiKey = apiKey;
+    }
+
+    private String baseUrl() {
+        if (testBaseUrl != null) {
+            return testBaseUrl;
+        }
+        return EPA_BASE_URL != null ? EPA_BASE_URL
+                : configService.getString(EPAConfigService.BASE_URL, DEFAULT_BASE_URL);
+    }
+
+    private String apiKey() {
+        if (testApiKey != null) {
+            return testApiKey;
+        }
+        return EPA_API_KEY != null ? EPA_API_KEY
+                : configService.getString(EPAConfigService.API_KEY, "your-api-key");
+    }
+
+    /**
+     * Führt einen EPA-Aufruf aus und erfasst Metriken sowie das Audit-Log.
+     * Bei offenem Circuit Breaker wird der Aufruf ohne Netzwerkzugriff abgewiesen,
+     * jeder Versuch läuft über das gemeinsame Rate-Limit. Vorübergehende Fehler
+     * werden gemäß epa_retry_attempts mit Backoff wiederholt. Jeder Versuch ist
+     * auf das Zeitlimit der Operation begrenzt (siehe {@link #timeoutMillis(String)}).
+     */
+    private <T> T invoke(String operation, Long patientId, Supplier<CompletableFuture<EPAHttpResponse>> call,
+            Function<EPAHttpResponse, T> handler) {
+        EPARetryPolicy retryPolicy = new EPARetryPolicy(configService.getInt(EPAConfigService.RETRY_ATTEMPTS, 3));
+        acquirePermission(operation);
+        metrics.requestStarted(operation);
+        long started = System.nanoTime();
+        boolean failed = true;
+        boolean completed = false;
+        String error = null;
+        T result = null;
+        try {
+            for (int retry = 0;; retry++) {
+                if (retry > 0) {
+                    acquirePermission(operation);
+                }
+                long start = System.nanoTime();
+                EPAHttpResponse response;
+                try {
+                    response = await(operation, call.get());
+                } catch (RuntimeException e) {
+                    error = e.getMessage();
+                    circuitBreaker.onResult(true, elapsedMillis(start));
+                    if (retry >= retryPolicy.getMaxRetries() || !retryPolicy.isRetryable(e)) {
+                        throw e;
+                    }
+                    pauseBeforeRetry(operation, retryPolicy.delayMillis(retry, null), e.getMessage());
+                    continue;
+                }
+
+                int status = response.getStatus();
+                failed = status >= 500;
+                error = status >= 400 ? "HTTP " + status : null;
+                circuitBreaker.onResult(failed, elapsedMillis(start));
+                if (status == 429) {
+                    rateLimiter.onThrottled();
+                } else if (status < 400) {
+                    rateLimiter.onSuccess();
+                }
+                if (retry < retryPolicy.getMaxRetries() && retryPolicy.isRetryableStatus(status,
+                        IDEMPOTENT_OPERATIONS.contains(operation))) {
+                    pauseBeforeRetry(operation,
+                            retryPolicy.delayMillis(retry, response.getHeader("Retry-After")),
+                            "HTTP " + status);
+                    continue;
+                }
+                result = handler.apply(response);
+                completed = true;
+                return result;
+            }
+        } finally {
+            metrics.requestFinished(operation, failed);
+            audit(operation, patientId, completed, error, result, elapsedMillis(started));
+        }
+    }
+
+    /**
+     * Zeitlimit einer Operation: epa_timeout_seconds_&lt;operation&gt;, sonst aus
+     * epa_timeout_seconds abgeleitet (Health-Check kürzer, Bundles länger)
+     */
+    long timeoutMillis(String operation) {
+        int base = configService.getInt(EPAConfigService.TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS);
+        int fallback = switch (operation) {
+            case "health" -> Math.min(base, HEALTH_TIMEOUT_SECONDS);
+            case "bundle" -> base * BUNDLE_TIMEOUT_FACTOR;
+            default -> base;
+        };
+        return TimeUnit.SECONDS.toMillis(
+                configService.getInt(EPAConfigService.TIMEOUT_SECONDS + "_" + operation, fallback));
+    }
+
+    // Wartet höchstens das Zeitlimit der Operation; danach wird der Request abgebrochen,
+    // damit ein hängender EPA-Endpunkt keinen Container-Thread blockiert. Synchrone
+    // Transporte liefern ein abgeschlossenes Future und melden Zeitüberschreitungen als Fehler.
+    private EPAHttpResponse await(String operation, CompletableFuture<EPAHttpResponse> future) {
+        long timeout = timeoutMillis(operation);
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            metrics.requestTimedOut(operation);
+            throw new ProcessingException("EPA-Zeitlimit für " + operation + " überschritten ("
+                    + timeout + " ms)", e);
+        } catch (ExecutionException e) {
+            if (isTimeout(e.getCause())) {
+                metrics.requestTimedOut(operation);
+                throw new ProcessingException("EPA-Zeitlimit für " + operation + " überschritten ("
+                        + timeout + " ms)", e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new ProcessingException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("EPA-Aufruf unterbrochen", e);
+        }
+    }
+
+    // Lese-Timeout der EPA; ein Connect-Timeout bleibt ein (wiederholbarer) Verbindungsfehler
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpConnectTimeoutException
+                    || cause.getClass().getSimpleName().equals("ConnectTimeoutException")) {
+                return false;
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Audit-Eintrag für epa_sync_log; wird nur gepuffert, geschrieben wird im Hintergrund
+    private void audit(String operation, Long patientId, boolean completed, String error, Object result,
+            long durationMs) {
+        String epaId = null;
+        if (result instanceof EPAResponse epaResponse) {
+            epaId = epaResponse.getEpaId();
+            if (!epaResponse.isSuccess() && error == null) {
+                error = epaResponse.getMessage();
+            }
+        }
+        boolean success = completed && error == null;
+        if (!completed && error == null) {
+            error = "Aufruf abgebrochen";
+        }
+        syncLog.record(new EPASyncLogEntry(patientId, operation, success ? "success" : "error", epaId, error,
+                LocalDateTime.now(), durationMs));
+    }
+
+    // Erst Circuit Breaker, dann Rate-Limit: abgewiesene Aufrufe verbrauchen kein Token
+    private void acquirePermission(String operation) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            metrics.requestRejected(operation);
+            throw new IllegalStateException("EPA vorübergehend gesperrt (Circuit Breaker offen)");
+        }
+        rateLimiter.acquire();
+    }
+
+    private void pauseBeforeRetry(String operation, long delayMillis, String reason) {
+        metrics.requestRetried(operation);
+        LOGGER.info("EPA-Aufruf " + operation + " fehlgeschlagen (" + reason + "), neuer Versuch in "
+                + delayMillis + " ms");
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Wiederholung des EPA-Aufrufs unterbrochen", e);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public EPACircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
 }
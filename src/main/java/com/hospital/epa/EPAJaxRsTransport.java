@@ -0,0 +1,66 @@
+package com.hospital.epa;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Standard-Transport über den geteilten JAX-RS-Client (HTTP/1.1 mit Connection-Pool).
+ * Der Request läuft synchron im aufrufenden Thread, der ohnehin auf die Antwort wartet;
+ * das Zeitlimit greift als Lese-Timeout des Clients.
+ */
+@ApplicationScoped
+public class EPAJaxRsTransport implements EPATransport {
+
+    @Inject
+    private EPAClientProvider clientProvider;
+
+    public EPAJaxRsTransport() {
+    }
+
+    EPAJaxRsTransport(EPAClientProvider clientProvider) {
+        this.clientProvider = clientProvider;
+    }
+
+    @Override
+    public CompletableFuture<EPAHttpResponse> send(String method, URI uri, Map<String, String> headers,
+            String body, Duration timeout) {
+        Invocation.Builder builder = clientProvider.getClient(timeout).target(uri).request();
+        headers.forEach(builder::header);
+        String contentType = headers.getOrDefault("Content-Type", MediaType.APPLICATION_JSON);
+
+        // Body sofort lesen und schließen, damit die Verbindung an den Pool zurückgeht
+        try (Response response = body != null
+                ? builder.method(method, Entity.entity(body, contentType))
+                : builder.method(method)) {
+            return CompletableFuture.completedFuture(toEPAResponse(response));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "jaxrs";
+    }
+
+    private static EPAHttpResponse toEPAResponse(Response response) {
+        Map<String, String> headers = new HashMap<>();
+        response.getStringHeaders().forEach((name, values) -> {
+            if (!values.isEmpty()) {
+                headers.put(name, values.get(0));
+            }
+        });
+        String body = response.hasEntity() ? response.readEntity(String.class) : null;
+        return new EPAHttpResponse(response.getStatus(), body, headers);
+    }
+}
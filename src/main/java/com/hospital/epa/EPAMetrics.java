@@ -0,0 +1,158 @@
+package com.hospital.epa;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Laufzeitmetriken der EPA-Kommunikation (Requests, Fehler, laufende Aufrufe, Circuit Breaker, Rate-Limit)
+ */
+@ApplicationScoped
+public class EPAMetrics {
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> retries = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> timeouts = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    @Inject
+    private EPACircuitBreaker circuitBreaker;
+
+    @Inject
+    private EPARateLimiter rateLimiter;
+
+    @Inject
+    private EPASyncLogWriter syncLog;
+
+    @Inject
+    private EPAFetchCache fetchCache;
+
+    private volatile int maxConnections;
+    private volatile int maxConnectionsPerRoute;
+
+    /**
+     * Merkt sich die konfigurierte Pool-Größe für die Ausgabe
+     */
+    public void registerPool(int maxConnections, int maxConnectionsPerRoute) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public void requestStarted(String operation) {
+        requests.computeIfAbsent(operation, k -> new LongAdder()).increment();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    }
+
+    public void requestFinished(String operation, boolean failed) {
+        inFlight.decrementAndGet();
+        if (failed) {
+            failures.computeIfAbsent(operation, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Zählt einen vom Circuit Breaker abgewiesenen Aufruf
+     */
+    public void requestRejected(String operation) {
+        rejected.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Zählt eine Wiederholung nach vorübergehendem Fehler
+     */
+    public void requestRetried(String operation) {
+        retries.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Zählt eine Überschreitung des Zeitlimits (EPA-Aufruf oder Sync-Job)
+     */
+    public void requestTimedOut(String operation) {
+        timeouts.computeIfAbsent(operation, k -> new LongAdder()).increment();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    public long getRequestCount(String operation) {
+        LongAdder adder = requests.get(operation);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public long getFailureCount(String operation) {
+        LongAdder adder = failures.get(operation);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public long getRetryCount(String operation) {
+        LongAdder adder = retries.get(operation);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public long getTimeoutCount(String operation) {
+        LongAdder adder = timeouts.get(operation);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    public long getRejectedCount(String operation) {
+        LongAdder adder = rejected.get(operation);
+        return adder != null ? adder.sum() : 0;
+    }
+
+    /**
+     * Liefert alle Metriken als JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"pool\": {\"maxConnections\": ").append(maxConnections)
+                .append(", \"maxConnectionsPerRoute\": ").append(maxConnectionsPerRoute)
+                .append("}");
+        // Laufende EPA-Aufrufe aller Transporte, nicht belegte Pool-Verbindungen (HTTP/2 nutzt den Pool nicht)
+        json.append(", \"inFlight\": ").append(inFlight.get())
+                .append(", \"peakInFlight\": ").append(peakInFlight.get());
+        json.append(", \"requests\": ").append(countersToJson(requests));
+        json.append(", \"failures\": ").append(countersToJson(failures));
+        json.append(", \"retries\": ").append(countersToJson(retries));
+        json.append(", \"rejected\": ").append(countersToJson(rejected));
+        json.append(", \"timeouts\": ").append(countersToJson(timeouts));
+        if (circuitBreaker != null) {
+            json.append(", \"circuitBreaker\": ").append(circuitBreaker.toJson());
+        }
+        if (rateLimiter != null) {
+            json.append(", \"rateLimiter\": ").append(rateLimiter.toJson());
+        }
+        if (syncLog != null) {
+            json.append(", \"syncLog\": ").append(syncLog.toJson());
+        }
+        if (fetchCache != null) {
+            json.append(", \"fetchCache\": ").append(fetchCache.toJson());
+        }
+        json.append("}");
+        return json.toString();
+    }
+
+    private String countersToJson(Map<String, LongAdder> counters) {
+        StringBuilder json = new StringBuilder("{");
+        Map<String, LongAdder> sorted = new TreeMap<>(counters);
+        for (Map.Entry<String, LongAdder> entry : sorted.entrySet()) {
+            if (json.length() > 1) {
+                json.append(", ");
+            }
+            json.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue().sum());
+        }
+        return json.append("}").toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.hospital.epa;
+
+import java.util.List;
+
+import com.hospital.entity.EPAOutboxEntry;
+import com.hospital.entity.Patient;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Transaktionale Outbox für EPA-Übertragungen.
+ * Einträge werden in der Transaktion der Patientenänderung geschrieben und vom
+ * {@link EPAOutboxDispatcher} mit FOR UPDATE SKIP LOCKED abgeholt, sodass mehrere
+ * Worker (auch auf mehreren Knoten) parallel arbeiten können.
+ */
+@Stateless
+public class EPAOutbox {
+
+    // Ein offener Eintrag pro Patient genügt, der Dispatcher sendet immer den aktuellen Stand
+    private static final String ENQUEUE_SQL = "INSERT INTO epa_outbox "
+            + "(patient_id, operation, status, attempts, next_attempt_at, created_at) "
+            + "VALUES (?1, 'upsert', 'pending', 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) "
+            + "ON CONFLICT (patient_id) WHERE status = 'pending' DO NOTHING";
+
+    // Fällige Einträge und solche mit abgelaufenem Lease (abgestürzter Worker) übernehmen
+    private static final String CLAIM_SQL = "UPDATE epa_outbox SET status = 'processing', "
+            + "locked_by = ?1, locked_until = CURRENT_TIMESTAMP + make_interval(secs => ?2), "
+            + "attempts = attempts + 1 "
+            + "WHERE id IN (SELECT id FROM epa_outbox "
+            + "WHERE (status = 'pending' AND next_attempt_at <= CURRENT_TIMESTAMP) "
+            + "OR (status = 'processing' AND locked_until < CURRENT_TIMESTAMP) "
+            + "ORDER BY id LIMIT ?3 FOR UPDATE SKIP LOCKED) "
+            + "RETURNING *";
+
+    // Eintrag in einer Anweisung freigeben und neu einstellen: Ein zwischenzeitlich vorgemerkter
+    // offener Eintrag deckt den Patienten ab, ON CONFLICT wartet dabei auch auf noch nicht
+    // committete Vormerkungen statt am Unique-Index abzubrechen
+    private static final String RESCHEDULE_SQL = "WITH done AS (DELETE FROM epa_outbox "
+            + "WHERE id = ?1 AND locked_by = ?2 RETURNING patient_id, operation, attempts, created_at) "
+            + "INSERT INTO epa_outbox "
+            + "(patient_id, operation, status, attempts, next_attempt_at, last_error, created_at) "
+            + "SELECT d.patient_id, d.operation, CASE WHEN d.attempts >= ?5 THEN 'failed' ELSE 'pending' END, "
+            + "d.attempts, CURRENT_TIMESTAMP + make_interval(secs => ?4), ?3, d.created_at FROM done d "
+            + "WHERE d.attempts < ?5 OR NOT EXISTS "
+            + "(SELECT 1 FROM epa_outbox o WHERE o.patient_id = d.patient_id AND o.status = 'pending') "
+            + "ON CONFLICT (patient_id) WHERE status = 'pending' DO NOTHING";
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    /**
+     * Merkt einen Patienten zur Übertragung vor. Läuft in der Transaktion des Aufrufers,
+     * damit Änderung und Outbox-Eintrag gemeinsam committet oder verworfen werden.
+     */
+    @TransactionAttribute(TransactionAttributeType.MANDATORY)
+    public void enqueue(Patient patient) {
+        if (patient.getId() == null || !Boolean.TRUE.equals(patient.getEpaEnabled())) {
+            return;
+        }
+        em.createNativeQuery(ENQUEUE_SQL)
+                .setParameter(1, patient.getId())
+                .executeUpdate();
+    }
+
+    /**
+     * Ergänzt ein mengenbasiertes UPDATE auf patients (endet auf "RETURNING id, epa_enabled")
+     * zu einer Anweisung, die die geänderten Patienten mit EPA-Freigabe zugleich vormerkt.
+     * Nachträglich lassen sich die Zeilen nicht wiederfinden, da der Trigger updated_at
+     * überschreibt. Die Anweisung liefert die Anzahl geänderter Patienten.
+     */
+    public static String enqueueChanged(String updateReturning) {
+        return "WITH changed AS (" + updateReturning + "), "
+                + "queued AS (INSERT INTO epa_outbox "
+                + "(patient_id, operation, status, attempts, next_attempt_at, created_at) "
+                + "SELECT id, 'upsert', 'pending', 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM changed "
+                + "WHERE epa_enabled = true "
+                + "ON CONFLICT (patient_id) WHERE status = 'pending' DO NOTHING) "
+                + "SELECT COUNT(*) FROM changed";
+    }
+
+    /**
+     * Übernimmt bis zu limit fällige Einträge für einen Worker. Die Übernahme wird
+     * sofort committet; der Lease schützt die Einträge während der Verarbeitung.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @SuppressWarnings("unchecked")
+    public List<EPAOutboxEntry> claim(String workerId, int leaseSeconds, int limit) {
+        return em.createNativeQuery(CLAIM_SQL, EPAOutboxEntry.class)
+                .setParameter(1, workerId)
+                .setParameter(2, leaseSeconds)
+                .setParameter(3, limit)
+                .getResultList();
+    }
+
+    /**
+     * Erfolgreich übertragen: Eintrag entfernen
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void complete(EPAOutboxEntry entry) {
+        em.createNativeQuery("DELETE FROM epa_outbox WHERE id = ?1 AND locked_by = ?2")
+                .setParameter(1, entry.getId())
+                .setParameter(2, entry.getLockedBy())
+                .executeUpdate();
+    }
+
+    /**
+     * Fehlgeschlagen: später erneut versuchen, nach maxAttempts als failed markieren.
+     * Der Eintrag erhält dabei eine neue id; ist der Patient inzwischen erneut vorgemerkt, entfällt er.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void reschedule(EPAOutboxEntry entry, String error, long delaySeconds, int maxAttempts) {
+        em.createNativeQuery(RESCHEDULE_SQL)
+                .setParameter(1, entry.getId())
+                .setParameter(2, entry.getLockedBy())
+                .setParameter(3, error)
+                .setParameter(4, delaySeconds)
+                .setParameter(5, maxAttempts)
+                .executeUpdate();
+    }
+
+    /**
+     * Anzahl der Einträge je Status
+     */
+    public long count(String status) {
+        return em.createQuery("SELECT COUNT(e) FROM EPAOutboxEntry e WHERE e.status = :status", Long.class)
+                .setParameter("status", status)
+                .getSingleResult();
+    }
+}
@@ -0,0 +1,138 @@
+package com.hospital.epa;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.hospital.entity.EPAOutboxEntry;
+import com.hospital.entity.Patient;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+
+/**
+ * Überträgt Einträge der EPA-Outbox im Hintergrund.
+ * Jeder Worker holt blockweise fällige Einträge ab und sendet den aktuellen Stand
+ * des Patienten. Die Zustellung erfolgt mindestens einmal: stirbt ein Worker,
+ * übernimmt nach Ablauf des Leases ein anderer den Eintrag.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPAOutboxDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(EPAOutboxDispatcher.class.getName());
+
+    // Parallele Worker pro Knoten (0 deaktiviert den Dispatcher)
+    private static final int WORKERS = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_OUTBOX_WORKERS", "2"));
+
+    private static final int BATCH_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_OUTBOX_BATCH_SIZE", "50"));
+
+    // Ein Block muss innerhalb des Leases verarbeitet sein, sonst übernimmt ihn ein anderer Worker
+    private static final int LEASE_SECONDS = 300;
+
+    // Danach wird ein Eintrag als failed markiert und nicht mehr automatisch wiederholt
+    private static final int MAX_ATTEMPTS = 10;
+
+    private static final long MAX_RETRY_DELAY_SECONDS = 3600;
+
+    // Kennung dieses Knotens für locked_by
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Inject
+    private EPAOutbox outbox;
+
+    @Inject
+    private EPAIntegrationService epaService;
+
+    @Inject
+    private EPASyncRepository syncRepository;
+
+    /**
+     * Startet die Worker, sofern die vorherige Runde beendet ist
+     */
+    @Schedule(hour = "*", minute = "*", second = "*/15", persistent = false)
+    public void dispatch() {
+        if (WORKERS <= 0 || !activeWorkers.compareAndSet(0, WORKERS)) {
+            return;
+        }
+        for (int i = 0; i < WORKERS; i++) {
+            String workerId = nodeId + "-" + i;
+            try {
+                executor.execute(() -> {
+                    try {
+                        drain(workerId);
+                    } finally {
+                        activeWorkers.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                activeWorkers.decrementAndGet();
+                LOGGER.warning("Outbox-Worker konnte nicht gestartet werden: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Verarbeitet fällige Einträge, bis die Outbox leer ist
+     */
+    int drain(String workerId) {
+        int processed = 0;
+        try {
+            List<EPAOutboxEntry> batch;
+            while (!(batch = outbox.claim(workerId, LEASE_SECONDS, BATCH_SIZE)).isEmpty()) {
+                for (EPAOutboxEntry entry : batch) {
+                    process(entry);
+                    processed++;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.severe("Outbox-Worker " + workerId + " abgebrochen: " + e.getMessage());
+        }
+        if (processed > 0) {
+            LOGGER.info("Outbox-Worker " + workerId + ": " + processed + " Einträge verarbeitet");
+        }
+        return processed;
+    }
+
+    void process(EPAOutboxEntry entry) {
+        Patient patient = syncRepository.findPatient(entry.getPatientId());
+        if (patient == null || !Boolean.TRUE.equals(patient.getEpaEnabled())) {
+            // Patient gelöscht oder Einwilligung widerrufen: nichts mehr zu übertragen
+            outbox.complete(entry);
+            return;
+        }
+
+        // Unveränderte Patienten (z.B. nur Aufnahmedaten geändert) ohne EPA-Aufruf abschließen
+        EPAResponse response = epaService.syncPatient(patient);
+        syncRepository.recordResult(patient, response);
+
+        if (response.isSuccess()) {
+            outbox.complete(entry);
+        } else {
+            outbox.reschedule(entry, response.getMessage(), retryDelaySeconds(entry.getAttempts()), MAX_ATTEMPTS);
+        }
+    }
+
+    // 30 s, 60 s, 120 s, ... höchstens eine Stunde
+    static long retryDelaySeconds(int attempts) {
+        return Math.min(MAX_RETRY_DELAY_SECONDS, 30L << Math.min(Math.max(attempts - 1, 0), 10));
+    }
+}
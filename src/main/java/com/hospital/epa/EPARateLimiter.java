@@ -0,0 +1,139 @@
+package com.hospital.epa;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Token-Bucket für alle EPA-Aufrufe der Anwendung.
+ * Begrenzt die Request-Rate auf das vertraglich erlaubte Maß und reagiert auf
+ * 429-Antworten der EPA: die Rate wird dann halbiert und bei erfolgreichen
+ * Aufrufen schrittweise wieder bis zur konfigurierten Rate angehoben.
+ */
+@ApplicationScoped
+public class EPARateLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(EPARateLimiter.class.getName());
+
+    // Erlaubte Requests pro Sekunde (konfigurierbar über Umgebungsvariablen)
+    private static final double RATE_PER_SECOND = Double.parseDouble(System.getenv()
+            .getOrDefault("EPA_RATE_LIMIT_PER_SECOND", "20"));
+
+    // Maximale Anzahl Requests, die nach einer Pause sofort gesendet werden dürfen
+    private static final int BURST = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_RATE_LIMIT_BURST", "40"));
+
+    // Untergrenze, auf die die Rate nach wiederholten 429 höchstens sinkt
+    private static final double MIN_RATE_FRACTION = 0.05;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+    private final int burst;
+    private final LongSupplier clock;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long lastIncrease;
+    private long throttledCount;
+    private long waitedNanos;
+
+    public EPARateLimiter() {
+        this(RATE_PER_SECOND, BURST, System::nanoTime);
+    }
+
+    EPARateLimiter(double ratePerSecond, int burst, LongSupplier clock) {
+        this.maxRate = ratePerSecond;
+        this.burst = burst;
+        this.clock = clock;
+        this.rate = ratePerSecond;
+        this.tokens = burst;
+        this.lastRefill = clock.getAsLong();
+        this.lastIncrease = lastRefill;
+    }
+
+    /**
+     * Wartet, bis ein Request gesendet werden darf
+     */
+    public void acquire() {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Warten auf EPA-Rate-Limit unterbrochen", e);
+        }
+    }
+
+    /**
+     * Reserviert ein Token und liefert die nötige Wartezeit in Nanosekunden.
+     * Wartende reservieren im Voraus, dadurch werden sie in Ankunftsreihenfolge bedient.
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        long wait = (long) (-tokens / rate * NANOS_PER_SECOND);
+        waitedNanos += wait;
+        return wait;
+    }
+
+    /**
+     * Die EPA hat mit 429 geantwortet: Rate halbieren
+     */
+    public synchronized void onThrottled() {
+        refill();
+        throttledCount++;
+        double reduced = Math.max(maxRate * MIN_RATE_FRACTION, rate / 2);
+        if (reduced < rate) {
+            LOGGER.warning(String.format(Locale.ROOT, "EPA-Rate-Limit erreicht, Rate %.1f -> %.1f req/s",
+                    rate, reduced));
+            rate = reduced;
+        }
+        // Bereits angesparte Tokens verwerfen, sonst folgt sofort der nächste Burst
+        tokens = Math.min(tokens, 0);
+        lastIncrease = clock.getAsLong();
+    }
+
+    /**
+     * Erfolgreicher Aufruf: Rate höchstens einmal pro Sekunde um 10 % der
+     * konfigurierten Rate anheben
+     */
+    public synchronized void onSuccess() {
+        if (rate >= maxRate) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (now - lastIncrease >= NANOS_PER_SECOND) {
+            refill();
+            rate = Math.min(maxRate, rate + maxRate * 0.1);
+            lastIncrease = now;
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"ratePerSecond\": %.2f, \"configuredRatePerSecond\": %.2f, \"burst\": %d, "
+                        + "\"throttled\": %d, \"waitedMillis\": %d}",
+                rate, maxRate, burst, throttledCount, TimeUnit.NANOSECONDS.toMillis(waitedNanos));
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
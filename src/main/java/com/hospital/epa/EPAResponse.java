@@ -7,6 +7,8 @@ public class EPAResponse {
     private boolean success;
     private String epaId;
     private String message;
+    private String payloadHash;
+    private boolean skipped;
 
     public EPAResponse(boolean success, String epaId, String message) {
         this.success = success;
@@ -14,6 +16,26 @@ public class EPAResponse {
         this.message = message;
     }
 
+    /**
+     * Successful sync without an EPA call because the FHIR document is unchanged.
+     */
+    public static EPAResponse skipped(String epaId, String payloadHash) {
+        EPAResponse response = new EPAResponse(true, epaId, "Keine Änderung seit letzter Übertragung");
+        response.payloadHash = payloadHash;
+        response.skipped = true;
+        return response;
+    }
+
+    /**
+     * Copy carrying the hash of the FHIR document that was sent.
+     */
+    public EPAResponse withPayloadHash(String payloadHash) {
+        EPAResponse response = new EPAResponse(success, epaId, message);
+        response.payloadHash = payloadHash;
+        response.skipped = skipped;
+        return response;
+    }
+
     public boolean isSuccess() {
         return success;
     }
@@ -25,4 +47,12 @@ public class EPAResponse {
     public String getMessage() {
         return message;
     }
+
+    public String getPayloadHash() {
+        return payloadHash;
+    }
+
+    public boolean isSkipped() {
+        return skipped;
+    }
 }
@@ -0,0 +1,112 @@
+package com.hospital.epa;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Wiederholungsstrategie für EPA-Aufrufe.
+ * Immer wiederholt werden Fehler, bei denen die Anfrage nicht verarbeitet wurde:
+ * Verbindungsfehler, 429 und 503. Bei 502/504 kann das Gateway die Anfrage bereits
+ * weitergereicht haben; sie werden nur bei idempotenten Anfragen wiederholt, deren
+ * Wiederholung keine Duplikate erzeugt (GET, PUT, bedingtes Anlegen). Lese-Timeouts
+ * werden aus demselben Grund nicht wiederholt.
+ */
+public class EPARetryPolicy {
+
+    // Basis der exponentiellen Wartezeit (200 ms, 400 ms, 800 ms, ...)
+    private static final long BASE_DELAY_MILLIS = 200;
+
+    private static final long MAX_DELAY_MILLIS = 10_000;
+
+    // Obergrenze für Retry-After, damit ein Aufruf nicht beliebig lange blockiert
+    private static final long MAX_RETRY_AFTER_MILLIS = 60_000;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public EPARetryPolicy(int maxRetries) {
+        this(maxRetries, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS);
+    }
+
+    EPARetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param idempotent die Anfrage darf mehrfach bei der EPA ankommen
+     */
+    public boolean isRetryableStatus(int status, boolean idempotent) {
+        return status == 429 || status == 503 || (idempotent && (status == 502 || status == 504));
+    }
+
+    /**
+     * Verbindungsfehler, bei denen die Anfrage die EPA nie erreicht hat
+     */
+    public boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException
+                    // Apache HttpClient (RESTEasy) meldet Connect-Timeouts als eigene Klasse
+                    || cause.getClass().getSimpleName().equals("ConnectTimeoutException")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wartezeit vor der Wiederholung retry (0-basiert). Ein Retry-After der EPA
+     * hat Vorrang, sonst exponentiell mit Jitter (zwischen halber und voller Stufe).
+     */
+    public long delayMillis(int retry, String retryAfter) {
+        Long requested = parseRetryAfter(retryAfter);
+        if (requested != null) {
+            return Math.min(requested, MAX_RETRY_AFTER_MILLIS);
+        }
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry, 20));
+        if (ceiling <= 1) {
+            return ceiling;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * Wertet Retry-After als Sekunden oder HTTP-Datum aus; null wenn nicht vorhanden
+     */
+    static Long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        try {
+            // Vor dem Umrechnen begrenzen, sonst läuft die Multiplikation über
+            return Math.max(0, Math.min(Long.parseLong(value), MAX_RETRY_AFTER_MILLIS / 1000)) * 1000;
+        } catch (NumberFormatException e) {
+            // Sekundenwert jenseits von long: Obergrenze; sonst als Datum versuchen
+            if (value.chars().allMatch(Character::isDigit)) {
+                return MAX_RETRY_AFTER_MILLIS;
+            }
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(Instant.now(), until).toMillis());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.hospital.epa;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.hospital.entity.Patient;
+
+/**
+ * Nebenläufige EPA-Synchronisation, im Container auf Threads einer ManagedThreadFactory,
+ * sonst auf virtuellen Threads. Die Zahl gleichzeitiger EPA-Aufrufe wird über einen
+ * Semaphor begrenzt. Kommt ein Patient mehrfach vor, werden seine Einträge in Eingabereihenfolge
+ * nacheinander gesendet.
+ */
+public class EPASyncEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASyncEngine.class.getName());
+
+    private final int maxConcurrency;
+    private final Function<Patient, EPAResponse> sender;
+    private final ThreadFactory threadFactory;
+
+    public EPASyncEngine(int maxConcurrency, Function<Patient, EPAResponse> sender) {
+        this(maxConcurrency, sender, null);
+    }
+
+    /**
+     * @param threadFactory erzeugt die sendenden Threads; null für virtuelle Threads
+     */
+    public EPASyncEngine(int maxConcurrency, Function<Patient, EPAResponse> sender, ThreadFactory threadFactory) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency muss mindestens 1 sein");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.sender = sender;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Sendet alle Patienten und wartet, bis alle Aufrufe abgeschlossen sind
+     */
+    public EPASyncResult run(List<Patient> patients) {
+        return run(patients, (patient, response) -> {
+        });
+    }
+
+    /**
+     * Sendet alle Patienten; onResult wird pro Patient aus dem sendenden Thread aufgerufen
+     */
+    public EPASyncResult run(List<Patient> patients, BiConsumer<Patient, EPAResponse> onResult) {
+        return run(patients, onResult, () -> false);
+    }
+
+    /**
+     * Wie {@link #run(List, BiConsumer)}; sobald cancelled true liefert, werden keine
+     * weiteren Patienten gesendet. Laufende Aufrufe werden noch abgeschlossen.
+     */
+    public EPASyncResult run(List<Patient> patients, BiConsumer<Patient, EPAResponse> onResult,
+            BooleanSupplier cancelled) {
+        EPASyncResult result = new EPASyncResult();
+        Semaphore permits = new Semaphore(maxConcurrency);
+
+        ExecutorService executor = newExecutor(threadFactory);
+        try {
+            for (List<Patient> chain : groupByPatient(patients)) {
+                // Vor dem Start warten, damit nie mehr als maxConcurrency Threads existieren
+                permits.acquire();
+                if (cancelled.getAsBoolean()) {
+                    permits.release();
+                    break;
+                }
+                executor.execute(() -> {
+                    try {
+                        for (Patient patient : chain) {
+                            if (cancelled.getAsBoolean()) {
+                                break;
+                            }
+                            EPAResponse response = send(patient);
+                            result.record(response);
+                            onResult.accept(patient, response);
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("EPA-Synchronisation unterbrochen");
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+        return result;
+    }
+
+    private EPAResponse send(Patient patient) {
+        try {
+            return sender.apply(patient);
+        } catch (RuntimeException e) {
+            LOGGER.severe("Fehler bei EPA-Übertragung von Patient " + patient.getId() + ": " + e.getMessage());
+            return new EPAResponse(false, null, "Technischer Fehler: " + e.getMessage());
+        }
+    }
+
+    // Gleiche Patienten-ID → eine Kette, die sequentiell abgearbeitet wird
+    private List<List<Patient>> groupByPatient(List<Patient> patients) {
+        Map<Object, List<Patient>> chains = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            Object key = patient.getId() != null ? patient.getId() : new Object();
+            chains.computeIfAbsent(key, k -> new ArrayList<>()).add(patient);
+        }
+        return new ArrayList<>(chains.values());
+    }
+
+    /**
+     * Ein Thread pro Aufgabe; eine ManagedThreadFactory des Containers hat Vorrang, damit
+     * die Threads den Anwendungskontext tragen und nicht am Container vorbei laufen
+     */
+    static ExecutorService newExecutor(ThreadFactory threadFactory) {
+        return threadFactory != null ? Executors.newThreadPerTaskExecutor(threadFactory)
+                : Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
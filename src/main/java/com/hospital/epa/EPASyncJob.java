@@ -0,0 +1,222 @@
+package com.hospital.epa;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Zustand und Fortschritt einer im Hintergrund laufenden Massen-Synchronisation
+ */
+public class EPASyncJob {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final String mode;
+    private final boolean changedOnly;
+    private final long spreadSeconds;
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private volatile State state = State.QUEUED;
+    private volatile int total = -1;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+
+    // Checkpoint-Lauf, den dieser Job fortschreibt (eigene ID oder die eines unterbrochenen Laufs)
+    private volatile String runId = id;
+    private volatile long resumedAfterId;
+
+    public EPASyncJob(String mode) {
+        this(mode, false);
+    }
+
+    /**
+     * @param changedOnly nur geänderte oder fehlgeschlagene Patienten übertragen (Delta-Sync)
+     */
+    public EPASyncJob(String mode, boolean changedOnly) {
+        this(mode, changedOnly, 0);
+    }
+
+    /**
+     * @param spreadSeconds Übertragungen gleichmäßig über diesen Zeitraum verteilen (0: so schnell wie möglich)
+     */
+    public EPASyncJob(String mode, boolean changedOnly, long spreadSeconds) {
+        this.mode = mode;
+        this.changedOnly = changedOnly;
+        this.spreadSeconds = spreadSeconds;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        state = State.RUNNING;
+    }
+
+    /**
+     * Setzt einen unterbrochenen Lauf nach afterId fort
+     */
+    void resume(String runId, long afterId) {
+        this.runId = runId;
+        this.resumedAfterId = afterId;
+    }
+
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Zählt das Ergebnis eines einzelnen Patienten
+     */
+    public void record(boolean success) {
+        if (success) {
+            succeeded.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+        processed.incrementAndGet();
+    }
+
+    /**
+     * Zählt das Ergebnis eines einzelnen Patienten; unveränderte Patienten als übersprungen
+     */
+    public void record(EPAResponse response) {
+        if (response.isSkipped()) {
+            skipped.incrementAndGet();
+            processed.incrementAndGet();
+        } else {
+            record(response.isSuccess());
+        }
+    }
+
+    void finish() {
+        finishedAt = Instant.now();
+        state = cancelRequested ? State.CANCELLED : State.COMPLETED;
+    }
+
+    void fail(String message) {
+        error = message;
+        finishedAt = Instant.now();
+        state = State.FAILED;
+    }
+
+    /**
+     * Fordert den Abbruch an; bereits laufende EPA-Aufrufe werden noch beendet
+     */
+    public void cancel() {
+        cancelRequested = true;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    public boolean isFinished() {
+        return state == State.COMPLETED || state == State.CANCELLED || state == State.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public boolean isChangedOnly() {
+        return changedOnly;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    /**
+     * Patienten-ID, nach der ein fortgesetzter Lauf wieder aufgesetzt hat (0: neuer Lauf)
+     */
+    public long getResumedAfterId() {
+        return resumedAfterId;
+    }
+
+    public long getSpreadSeconds() {
+        return spreadSeconds;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Verarbeitete Patienten pro Sekunde seit Start
+     */
+    public double getThroughput() {
+        if (startedAt == null) {
+            return 0;
+        }
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+        return processed.get() * 1000.0 / millis;
+    }
+
+    /**
+     * Geschätzte Restlaufzeit in Sekunden, -1 wenn unbekannt
+     */
+    public long getEtaSeconds() {
+        if (isFinished()) {
+            return 0;
+        }
+        double throughput = getThroughput();
+        if (total < 0 || throughput <= 0) {
+            return -1;
+        }
+        return Math.round((total - processed.get()) / throughput);
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"jobId\": \"%s\", \"runId\": \"%s\", \"resumedAfterId\": %d, "
+                        + "\"mode\": \"%s\", \"scope\": \"%s\", \"spreadSeconds\": %d, "
+                        + "\"status\": \"%s\", \"total\": %d, "
+                        + "\"processed\": %d, \"succeeded\": %d, \"failed\": %d, \"skipped\": %d, "
+                        + "\"throughputPerSecond\": %.2f, \"etaSeconds\": %d, "
+                        + "\"startedAt\": \"%s\", \"finishedAt\": \"%s\", \"error\": \"%s\"}",
+                id, runId, resumedAfterId, mode, changedOnly ? "changed" : "all", spreadSeconds, state, total,
+                processed.get(), succeeded.get(), failed.get(), skipped.get(), getThroughput(), getEtaSeconds(),
+                startedAt != null ? startedAt.toString() : "",
+                finishedAt != null ? finishedAt.toString() : "",
+                error != null ? error.replace("\"", "'") : "");
+    }
+}
@@ -0,0 +1,304 @@
+package com.hospital.epa;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import com.hospital.entity.EPASyncCheckpoint;
+import com.hospital.entity.Patient;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Inject;
+
+/**
+ * Startet Massen-Synchronisationen als Hintergrund-Jobs und verwaltet deren Fortschritt.
+ * Es läuft höchstens ein Sync-Job gleichzeitig; Lesen, Konvertieren, Senden und Speichern
+ * laufen überlappend in einer {@link EPASyncPipeline}. Der Fortschritt wird blockweise in
+ * epa_sync_checkpoint gespeichert; ein unterbrochener Lauf gleicher Art wird fortgesetzt.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class EPASyncJobManager {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASyncJobManager.class.getName());
+
+    // Anzahl abgeschlossener Jobs, die für Statusabfragen aufbewahrt werden
+    private static final int MAX_RETAINED_JOBS = 50;
+
+    // Patienten pro Datenbank-Block; der Job hält nie mehr als einen Block im Speicher
+    private static final int CHUNK_SIZE = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_SYNC_CHUNK_SIZE", "500"));
+
+    // Blöcke, die zwischen zwei Stufen der Sync-Pipeline höchstens warten (Lesen, Konvertieren,
+    // Senden, Speichern); begrenzt den Speicherbedarf auf wenige Blöcke
+    private static final int PIPELINE_BUFFER_CHUNKS = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_SYNC_PIPELINE_BUFFER", "2"));
+
+    // Maximale Laufzeit eines Sync-Jobs (zusätzlich zu einer gewünschten Verteilungsdauer)
+    private static final int DEFAULT_DEADLINE_MINUTES = 240;
+
+    // Unterbrochene Läufe werden nur fortgesetzt, wenn ihr Checkpoint jünger ist
+    private static final int DEFAULT_CHECKPOINT_MAX_AGE_HOURS = 24;
+
+    // Längste Einzelpause beim Verteilen, damit Abbrüche zeitnah greifen
+    private static final long MAX_PACING_SLEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Inject
+    private EPAIntegrationService epaService;
+
+    @Inject
+    private EPASyncRepository repository;
+
+    @Inject
+    private EPASyncResultWriter resultWriter;
+
+    @Inject
+    private EPAConfigService configService;
+
+    @Inject
+    private FHIRConverter fhirConverter;
+
+    @Inject
+    private EPAMetrics metrics;
+
+    private final Map<String, EPASyncJob> jobs = new ConcurrentHashMap<>();
+
+    private EPASyncJob activeJob;
+
+    /**
+     * Startet einen neuen Sync-Job. Läuft bereits einer, wird dieser zurückgegeben
+     * und kein zweiter gestartet.
+     */
+    public EPASyncJob start(String mode, boolean changedOnly) {
+        return start(mode, changedOnly, 0);
+    }
+
+    /**
+     * Wie {@link #start(String, boolean)}, verteilt die Übertragungen aber
+     * gleichmäßig über spreadSeconds statt sie so schnell wie möglich zu senden
+     */
+    public synchronized EPASyncJob start(String mode, boolean changedOnly, long spreadSeconds) {
+        if (activeJob != null && !activeJob.isFinished()) {
+            return activeJob;
+        }
+        String jobMode = mode != null ? mode : "single";
+        if (!"single".equals(jobMode) && !"bundle".equals(jobMode)) {
+            throw new IllegalArgumentException("Unbekannter Sync-Modus: " + jobMode);
+        }
+        EPASyncJob job = new EPASyncJob(jobMode, changedOnly, spreadSeconds);
+        jobs.put(job.getId(), job);
+        activeJob = job;
+        evictOldJobs();
+        executor.execute(() -> run(job));
+        LOGGER.info("EPA-Sync-Job " + job.getId() + " gestartet (Modus: " + job.getMode()
+                + (changedOnly ? ", nur Änderungen" : "") + ")");
+        return job;
+    }
+
+    /**
+     * Liefert den laufenden Job oder null
+     */
+    public synchronized EPASyncJob getActiveJob() {
+        return activeJob != null && !activeJob.isFinished() ? activeJob : null;
+    }
+
+    public EPASyncJob getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Fordert den Abbruch eines Jobs an; liefert null für unbekannte IDs
+     */
+    public EPASyncJob cancel(String id) {
+        EPASyncJob job = jobs.get(id);
+        if (job != null && !job.isFinished()) {
+            job.cancel();
+            LOGGER.info("Abbruch von EPA-Sync-Job " + id + " angefordert");
+        }
+        return job;
+    }
+
+    private void run(EPASyncJob job) {
+        job.markRunning();
+        // Letzte ID, bis zu der alle Patienten verarbeitet sind, und bisheriger Stand des Laufs
+        long checkpointId = 0;
+        long processedBefore = 0;
+        try {
+            EPASyncCheckpoint resumable = findResumableCheckpoint(job);
+            if (resumable != null) {
+                checkpointId = resumable.getLastPatientId();
+                processedBefore = resumable.getProcessed();
+                job.resume(resumable.getRunId(), checkpointId);
+                LOGGER.info("EPA-Sync-Job " + job.getId() + " setzt Lauf " + resumable.getRunId()
+                        + " nach Patient " + checkpointId + " fort");
+            }
+            job.setTotal((int) (checkpointId > 0
+                    ? repository.countSyncCandidates(job.isChangedOnly(), checkpointId)
+                    : repository.countSyncCandidates(job.isChangedOnly())));
+            saveCheckpoint(job, checkpointId, processedBefore, EPASyncCheckpoint.STATUS_RUNNING);
+            long started = System.nanoTime();
+            long nanosPerPatient = job.getTotal() > 0
+                    ? TimeUnit.SECONDS.toNanos(job.getSpreadSeconds()) / job.getTotal()
+                    : 0;
+            long deadline = started + TimeUnit.SECONDS.toNanos(job.getSpreadSeconds()) + TimeUnit.MINUTES.toNanos(
+                    configService.getInt(EPAConfigService.SYNC_JOB_DEADLINE_MINUTES, DEFAULT_DEADLINE_MINUTES));
+            // Nach Ablauf der Deadline werden wie bei einem Abbruch keine weiteren Patienten gesendet
+            BooleanSupplier stopped = () -> job.isCancelRequested() || System.nanoTime() - deadline > 0;
+
+            // Blockweise nach ID: bereits verarbeitete Patienten werden nicht erneut gelesen,
+            // auch wenn ihr Status sich durch die Übertragung ändert. Während ein Block gesendet
+            // wird, werden der nächste gelesen und konvertiert und der vorige gespeichert.
+            AtomicLong checkpoint = new AtomicLong(checkpointId);
+            AtomicLong checkpointed = new AtomicLong(processedBefore);
+            AtomicBoolean gap = new AtomicBoolean();
+            long resumeAfterId = checkpointId;
+            try {
+                pipeline().run(
+                        afterId -> repository.findSyncCandidates(job.isChangedOnly(), afterId, CHUNK_SIZE),
+                        resumeAfterId,
+                        chunk -> send(job, chunk, stopped, started, nanosPerPatient),
+                        chunk -> {
+                            List<EPASyncResultWriter.Outcome> outcomes = chunk.getOutcomes();
+                            boolean written = writeResults(outcomes);
+                            // Checkpoint nur für vollständig verarbeitete und gespeicherte Blöcke ohne Lücke
+                            // davor; ein abgebrochener Block wird beim Fortsetzen erneut gelesen
+                            // (unveränderte Patienten werden übersprungen)
+                            if (!written || !chunk.isComplete()) {
+                                gap.set(true);
+                            } else if (!gap.get()) {
+                                checkpoint.set(chunk.getLastPatientId());
+                                saveCheckpoint(job, checkpoint.get(), checkpointed.addAndGet(outcomes.size()),
+                                        EPASyncCheckpoint.STATUS_RUNNING);
+                            }
+                        },
+                        stopped);
+            } finally {
+                checkpointId = checkpoint.get();
+            }
+            if (!job.isCancelRequested() && System.nanoTime() - deadline > 0) {
+                metrics.requestTimedOut("sync-job");
+                LOGGER.warning("EPA-Sync-Job " + job.getId() + " hat das Zeitlimit überschritten, "
+                        + job.getProcessed() + " von " + job.getTotal() + " Patienten verarbeitet");
+                job.fail("Zeitlimit überschritten");
+                saveCheckpoint(job, checkpointId, processedBefore + job.getProcessed(),
+                        EPASyncCheckpoint.STATUS_FAILED);
+                return;
+            }
+            job.finish();
+            saveCheckpoint(job, checkpointId, processedBefore + job.getProcessed(),
+                    job.isCancelRequested() ? EPASyncCheckpoint.STATUS_CANCELLED : EPASyncCheckpoint.STATUS_COMPLETED);
+            LOGGER.info("EPA-Sync-Job " + job.getId() + " beendet: " + job.getSucceeded() + " erfolgreich, "
+                    + job.getFailed() + " fehlgeschlagen, " + job.getSkipped() + " unverändert");
+        } catch (Exception e) {
+            LOGGER.severe("EPA-Sync-Job " + job.getId() + " fehlgeschlagen: " + e.getMessage());
+            job.fail(e.getMessage());
+            saveCheckpoint(job, checkpointId, processedBefore + job.getProcessed(), EPASyncCheckpoint.STATUS_FAILED);
+        }
+    }
+
+    // Sende-Stufe: überträgt einen Block; die Ergebnisse landen im Block und im Job-Fortschritt
+    private void send(EPASyncJob job, EPASyncPipeline.Chunk chunk, BooleanSupplier stopped, long started,
+            long nanosPerPatient) {
+        BiConsumer<Patient, EPAResponse> onResult = (patient, response) -> {
+            chunk.record(patient, response);
+            job.record(response);
+            if (nanosPerPatient > 0) {
+                pace(job, started + job.getProcessed() * nanosPerPatient);
+            }
+        };
+        if ("bundle".equals(job.getMode())) {
+            epaService.syncAllPatientsInBundles(chunk.getPatients(), chunk::getPayload, onResult, stopped);
+        } else {
+            epaService.syncAllPatientsToEPA(chunk.getPatients(), chunk::getPayload, onResult, stopped);
+        }
+    }
+
+    private EPASyncPipeline pipeline() {
+        return new EPASyncPipeline(executor, PIPELINE_BUFFER_CHUNKS, Runtime.getRuntime().availableProcessors(),
+                fhirConverter::patientToFHIR, threadFactory);
+    }
+
+    // Speichert die Ergebnisse eines Blocks; ein Fehler bricht den Job nicht ab,
+    // die Patienten bleiben dann für den nächsten Delta-Sync offen
+    private boolean writeResults(List<EPASyncResultWriter.Outcome> outcomes) {
+        if (outcomes.isEmpty()) {
+            return true;
+        }
+        try {
+            resultWriter.write(outcomes);
+            return true;
+        } catch (Exception e) {
+            LOGGER.warning(outcomes.size() + " Sync-Ergebnisse nicht gespeichert: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Unterbrochener Lauf gleicher Art, der höchstens epa_sync_checkpoint_max_age_hours alt ist;
+    // ältere Checkpoints werden dabei entfernt
+    private EPASyncCheckpoint findResumableCheckpoint(EPASyncJob job) {
+        LocalDateTime notBefore = LocalDateTime.now().minusHours(configService.getInt(
+                EPAConfigService.SYNC_CHECKPOINT_MAX_AGE_HOURS, DEFAULT_CHECKPOINT_MAX_AGE_HOURS));
+        try {
+            repository.deleteCheckpointsOlderThan(notBefore);
+            return repository.findResumableCheckpoint(job.getMode(), job.isChangedOnly(), notBefore);
+        } catch (Exception e) {
+            LOGGER.warning("EPA-Sync-Checkpoint nicht lesbar, Lauf beginnt von vorn: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Ein nicht gespeicherter Checkpoint kostet beim Fortsetzen nur Wiederholungen, daher kein Abbruch
+    private void saveCheckpoint(EPASyncJob job, long lastPatientId, long processed, String status) {
+        try {
+            repository.saveCheckpoint(job, lastPatientId, processed, status);
+        } catch (Exception e) {
+            LOGGER.warning("EPA-Sync-Checkpoint für Lauf " + job.getRunId() + " nicht gespeichert: "
+                    + e.getMessage());
+        }
+    }
+
+    // Hält den sendenden Thread bis zum geplanten Zeitpunkt an; ein Abbruch beendet das Warten
+    private void pace(EPASyncJob job, long dueNanos) {
+        long wait;
+        while ((wait = dueNanos - System.nanoTime()) > 0 && !job.isCancelRequested()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, MAX_PACING_SLEEP_NANOS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void evictOldJobs() {
+        if (jobs.size() <= MAX_RETAINED_JOBS) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(EPASyncJob::isFinished)
+                .sorted(Comparator.comparing(EPASyncJob::getCreatedAt))
+                .limit(jobs.size() - MAX_RETAINED_JOBS)
+                .map(EPASyncJob::getId)
+                .toList()
+                .forEach(jobs::remove);
+    }
+}
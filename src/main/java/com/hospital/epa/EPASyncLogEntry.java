@@ -0,0 +1,56 @@
+package com.hospital.epa;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ein Eintrag des EPA-Audit-Logs (Tabelle epa_sync_log)
+ */
+public class EPASyncLogEntry {
+
+    private final Long patientId;
+    private final String syncType;
+    private final String syncStatus;
+    private final String epaId;
+    private final String errorMessage;
+    private final LocalDateTime timestamp;
+    private final long durationMs;
+
+    public EPASyncLogEntry(Long patientId, String syncType, String syncStatus, String epaId,
+            String errorMessage, LocalDateTime timestamp, long durationMs) {
+        this.patientId = patientId;
+        this.syncType = syncType;
+        this.syncStatus = syncStatus;
+        this.epaId = epaId;
+        this.errorMessage = errorMessage;
+        this.timestamp = timestamp;
+        this.durationMs = durationMs;
+    }
+
+    public Long getPatientId() {
+        return patientId;
+    }
+
+    public String getSyncType() {
+        return syncType;
+    }
+
+    public String getSyncStatus() {
+        return syncStatus;
+    }
+
+    public String getEpaId() {
+        return epaId;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+}
@@ -0,0 +1,167 @@
+package com.hospital.epa;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+
+/**
+ * Schreibt das EPA-Audit-Log (epa_sync_log) asynchron.
+ * EPA-Aufrufe legen ihre Einträge nur in einen begrenzten Puffer; ein
+ * Hintergrund-Flush schreibt sie blockweise mit mehrzeiligen INSERTs. Ist der
+ * Puffer voll, werden neue Einträge verworfen und gezählt, statt den
+ * EPA-Aufruf zu blockieren.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class EPASyncLogWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASyncLogWriter.class.getName());
+
+    private static final int CAPACITY = Integer.parseInt(System.getenv()
+            .getOrDefault("EPA_SYNC_LOG_BUFFER", "10000"));
+
+    // Zeilen pro INSERT (7 Parameter je Zeile, weit unter dem Limit von 32767)
+    private static final int BATCH_SIZE = 500;
+
+    private static final String COLUMNS = "(patient_id, sync_type, sync_status, epa_id, error_message, "
+            + "sync_timestamp, sync_duration_ms)";
+
+    private static final String ROW = "(?::integer, ?, ?, ?, ?, ?::timestamp, ?::integer)";
+
+    // Einträge zu inzwischen gelöschten Patienten überspringen statt den ganzen Block
+    // am Fremdschlüssel scheitern zu lassen
+    private static final String FILTER = " WHERE v.patient_id IS NULL "
+            + "OR EXISTS (SELECT 1 FROM patients p WHERE p.id = v.patient_id)";
+
+    @Resource(lookup = "java:/PostgresDS")
+    private DataSource dataSource;
+
+    private final BlockingQueue<EPASyncLogEntry> buffer;
+
+    // Nur ein Flush gleichzeitig, damit die Reihenfolge erhalten bleibt
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public EPASyncLogWriter() {
+        this(CAPACITY);
+    }
+
+    EPASyncLogWriter(int capacity) {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Legt einen Eintrag in den Puffer, ohne zu blockieren
+     */
+    public void record(EPASyncLogEntry entry) {
+        if (!buffer.offer(entry) && dropped.incrementAndGet() % 1000 == 1) {
+            LOGGER.warning("EPA-Sync-Log-Puffer voll, bisher " + dropped.get() + " Einträge verworfen");
+        }
+    }
+
+    /**
+     * Schreibt alle gepufferten Einträge
+     */
+    @Schedule(hour = "*", minute = "*", second = "*/2", persistent = false)
+    public void flush() {
+        if (dataSource == null || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            List<EPASyncLogEntry> batch = new ArrayList<>(BATCH_SIZE);
+            while (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                try {
+                    insert(batch);
+                    written.addAndGet(batch.size());
+                } catch (SQLException e) {
+                    dropped.addAndGet(batch.size());
+                    LOGGER.warning("EPA-Sync-Log konnte nicht geschrieben werden (" + batch.size()
+                            + " Einträge verworfen): " + e.getMessage());
+                }
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+    }
+
+    public int getQueued() {
+        return buffer.size();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public String toJson() {
+        return String.format("{\"queued\": %d, \"written\": %d, \"dropped\": %d}",
+                buffer.size(), written.get(), dropped.get());
+    }
+
+    private void insert(List<EPASyncLogEntry> batch) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(insertSql(batch.size()))) {
+            int index = 1;
+            for (EPASyncLogEntry entry : batch) {
+                if (entry.getPatientId() != null) {
+                    statement.setLong(index++, entry.getPatientId());
+                } else {
+                    statement.setNull(index++, Types.BIGINT);
+                }
+                statement.setString(index++, entry.getSyncType());
+                statement.setString(index++, entry.getSyncStatus());
+                statement.setString(index++, entry.getEpaId());
+                statement.setString(index++, entry.getErrorMessage());
+                statement.setTimestamp(index++, Timestamp.valueOf(entry.getTimestamp()));
+                statement.setLong(index++, entry.getDurationMs());
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO epa_sync_log ").append(COLUMNS)
+                .append(" SELECT v.* FROM (VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW);
+        }
+        return sql.append(") AS v ").append(COLUMNS).append(FILTER).toString();
+    }
+}
@@ -0,0 +1,275 @@
+package com.hospital.epa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+import com.hospital.entity.Patient;
+
+/**
+ * Massen-Synchronisation als Pipeline aus vier Stufen, verbunden über begrenzte
+ * {@link Flow}-Publisher: Datenbank-Leser (aufrufender Thread) → FHIR-Konvertierung
+ * (CPU-Pool, im Container aus der ManagedThreadFactory) → Senden (I/O, z.B. über
+ * {@link EPASyncEngine}) → Speichern der Ergebnisse.
+ * Jede Stufe bearbeitet einen Block nach dem anderen und fordert den nächsten erst an,
+ * wenn sie den vorigen weitergegeben hat. Ist der Puffer einer Stufe voll, wartet die
+ * vorige; die langsamste Stufe bremst so bis zum Leser zurück.
+ */
+public class EPASyncPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASyncPipeline.class.getName());
+
+    /**
+     * Block von Patienten mit vorab konvertierten FHIR-Dokumenten und den Sendeergebnissen
+     */
+    public static final class Chunk {
+        private final List<Patient> patients;
+        private final Map<Patient, String> payloads = Collections.synchronizedMap(new IdentityHashMap<>());
+        private final List<EPASyncResultWriter.Outcome> outcomes = Collections.synchronizedList(new ArrayList<>());
+
+        Chunk(List<Patient> patients) {
+            this.patients = patients;
+        }
+
+        public List<Patient> getPatients() {
+            return patients;
+        }
+
+        public long getLastPatientId() {
+            return patients.get(patients.size() - 1).getId();
+        }
+
+        /**
+         * FHIR-Dokument des Patienten; null, wenn die Konvertierung fehlgeschlagen ist
+         */
+        public String getPayload(Patient patient) {
+            return payloads.get(patient);
+        }
+
+        /**
+         * Meldet das Sendeergebnis eines Patienten (aus beliebigen Threads)
+         */
+        public void record(Patient patient, EPAResponse response) {
+            outcomes.add(new EPASyncResultWriter.Outcome(patient, response));
+        }
+
+        public List<EPASyncResultWriter.Outcome> getOutcomes() {
+            synchronized (outcomes) {
+                return new ArrayList<>(outcomes);
+            }
+        }
+
+        /**
+         * Alle Patienten des Blocks wurden gesendet (kein Abbruch mittendrin)
+         */
+        public boolean isComplete() {
+            return outcomes.size() >= patients.size();
+        }
+    }
+
+    private final Executor stageExecutor;
+    private final int bufferChunks;
+    private final int conversionThreads;
+    private final Function<Patient, String> converter;
+    private final ForkJoinPool.ForkJoinWorkerThreadFactory workerFactory;
+
+    public EPASyncPipeline(Executor stageExecutor, int bufferChunks, int conversionThreads,
+            Function<Patient, String> converter) {
+        this(stageExecutor, bufferChunks, conversionThreads, converter, null);
+    }
+
+    /**
+     * @param stageExecutor     führt die Stufen aus (je Stufe höchstens ein Thread gleichzeitig)
+     * @param bufferChunks      Blöcke, die zwischen zwei Stufen höchstens warten
+     * @param conversionThreads Threads der FHIR-Konvertierung
+     * @param converter         Patient → FHIR-Dokument
+     * @param workerFactory     erzeugt die Konvertierungs-Threads (eine ManagedThreadFactory ist
+     *                          zugleich ForkJoinWorkerThreadFactory); null außerhalb des Containers
+     */
+    public EPASyncPipeline(Executor stageExecutor, int bufferChunks, int conversionThreads,
+            Function<Patient, String> converter, ForkJoinPool.ForkJoinWorkerThreadFactory workerFactory) {
+        if (bufferChunks < 1 || conversionThreads < 1) {
+            throw new IllegalArgumentException("bufferChunks und conversionThreads müssen mindestens 1 sein");
+        }
+        this.stageExecutor = stageExecutor;
+        this.bufferChunks = bufferChunks;
+        this.conversionThreads = conversionThreads;
+        this.converter = converter;
+        this.workerFactory = workerFactory;
+    }
+
+    /**
+     * Liest Blöcke (Keyset nach afterId), bis ein leerer Block kommt oder stopped gilt, und
+     * wartet, bis alle gelesenen Blöcke gesendet und gespeichert sind. Ein Fehler des Lesers
+     * wird erst weitergegeben, nachdem die bereits gelesenen Blöcke gespeichert wurden.
+     *
+     * @param sender sendet einen Block und meldet jedes Ergebnis über {@link Chunk#record}
+     * @param writer speichert die Ergebnisse eines Blocks; Blöcke kommen in Lesereihenfolge an
+     */
+    public void run(LongFunction<List<Patient>> reader, long afterId, Consumer<Chunk> sender,
+            Consumer<Chunk> writer, BooleanSupplier stopped) throws Exception {
+        // Der Konverter ist eine EJB und braucht Threads mit Container-Kontext
+        ForkJoinPool cpuPool = new ForkJoinPool(conversionThreads,
+                workerFactory != null ? workerFactory : ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+        try {
+            run(reader, afterId, sender, writer, stopped, cpuPool);
+        } finally {
+            cpuPool.shutdown();
+        }
+    }
+
+    private void run(LongFunction<List<Patient>> reader, long afterId, Consumer<Chunk> sender,
+            Consumer<Chunk> writer, BooleanSupplier stopped, ForkJoinPool cpuPool) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        SubmissionPublisher<Chunk> source = new SubmissionPublisher<>(stageExecutor, bufferChunks);
+        Stage convert = new Stage(chunk -> convert(chunk, cpuPool));
+        Stage send = new Stage(sender);
+        source.subscribe(convert);
+        convert.subscribe(send);
+        send.subscribe(new Sink(writer, done));
+
+        RuntimeException readError = null;
+        try {
+            long after = afterId;
+            // Ein Fehler in einer späteren Stufe beendet auch das Lesen
+            while (!stopped.getAsBoolean() && !done.isDone()) {
+                List<Patient> patients = reader.apply(after);
+                if (patients.isEmpty()) {
+                    break;
+                }
+                Chunk chunk = new Chunk(patients);
+                // Wartet, solange die Konvertierung bufferChunks Blöcke im Rückstand ist
+                source.submit(chunk);
+                after = chunk.getLastPatientId();
+            }
+        } catch (RuntimeException e) {
+            readError = e;
+        } finally {
+            source.close();
+        }
+
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            if (readError == null && e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            LOGGER.warning("EPA-Sync-Pipeline: " + e.getCause());
+        }
+        if (readError != null) {
+            throw readError;
+        }
+    }
+
+    // Konvertiert den Block parallel; fehlerhafte Patienten bleiben ohne Dokument und
+    // werden beim Senden erneut konvertiert, damit der Fehler als Ergebnis gemeldet wird
+    private void convert(Chunk chunk, ForkJoinPool cpuPool) {
+        cpuPool.submit(() -> chunk.patients.parallelStream().forEach(patient -> {
+            try {
+                chunk.payloads.put(patient, converter.apply(patient));
+            } catch (RuntimeException e) {
+                LOGGER.fine("FHIR-Konvertierung von Patient " + patient.getId() + " fehlgeschlagen: "
+                        + e.getMessage());
+            }
+        })).join();
+    }
+
+    // Verarbeitet einen Block, gibt ihn weiter und fordert erst dann den nächsten an
+    private final class Stage extends SubmissionPublisher<Chunk> implements Flow.Processor<Chunk, Chunk> {
+
+        private final Consumer<Chunk> action;
+        private Flow.Subscription subscription;
+
+        private Stage(Consumer<Chunk> action) {
+            super(stageExecutor, bufferChunks);
+            this.action = action;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Chunk chunk) {
+            try {
+                action.accept(chunk);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                closeExceptionally(e);
+                return;
+            }
+            // Wartet bei vollem Puffer der nächsten Stufe
+            submit(chunk);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            closeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+    }
+
+    // Letzte Stufe: speichert die Ergebnisse und meldet das Ende der Pipeline
+    private static final class Sink implements Flow.Subscriber<Chunk> {
+
+        private final Consumer<Chunk> writer;
+        private final CompletableFuture<Void> done;
+        private Flow.Subscription subscription;
+
+        private Sink(Consumer<Chunk> writer, CompletableFuture<Void> done) {
+            this.writer = writer;
+            this.done = done;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Chunk chunk) {
+            try {
+                writer.accept(chunk);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                done.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.hospital.epa;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.hospital.entity.EPASyncCheckpoint;
+import com.hospital.entity.Patient;
+
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Datenbankzugriffe der Hintergrund-Synchronisation.
+ * Jeder Aufruf läuft in einer eigenen, kurzen Transaktion.
+ */
+@Stateless
+public class EPASyncRepository {
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    /**
+     * Nächster Block aktiver Patienten mit EPA-Einwilligung nach ID (Keyset-Paginierung)
+     *
+     * @param changedOnly nur Patienten, die seit der letzten Übertragung geändert wurden
+     *                    oder deren Übertragung fehlgeschlagen ist
+     */
+    public List<Patient> findSyncCandidates(boolean changedOnly, long afterId, int limit) {
+        return em.createNamedQuery(changedOnly ? "Patient.findEpaDeltaCandidates" : "Patient.findEpaSyncCandidates",
+                Patient.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    public Patient findPatient(Long id) {
+        return em.find(Patient.class, id);
+    }
+
+    public long countSyncCandidates(boolean changedOnly) {
+        return em.createNamedQuery(changedOnly ? "Patient.countEpaDeltaCandidates" : "Patient.countEpaSyncCandidates",
+                Long.class)
+                .getSingleResult();
+    }
+
+    /**
+     * Anzahl der Kandidaten nach afterId (Restmenge eines fortgesetzten Laufs)
+     */
+    public long countSyncCandidates(boolean changedOnly, long afterId) {
+        return em.createNamedQuery(changedOnly ? "Patient.countEpaDeltaCandidatesAfter"
+                : "Patient.countEpaSyncCandidatesAfter", Long.class)
+                .setParameter("afterId", afterId)
+                .getSingleResult();
+    }
+
+    /**
+     * Letzter unterbrochener oder fehlgeschlagener Lauf gleicher Art, der seit notBefore
+     * fortgeschrieben wurde; null, wenn neu begonnen werden muss
+     */
+    public EPASyncCheckpoint findResumableCheckpoint(String mode, boolean changedOnly, LocalDateTime notBefore) {
+        List<EPASyncCheckpoint> found = em.createNamedQuery("EPASyncCheckpoint.findResumable", EPASyncCheckpoint.class)
+                .setParameter("mode", mode)
+                .setParameter("changedOnly", changedOnly)
+                .setParameter("notBefore", notBefore)
+                .setMaxResults(1)
+                .getResultList();
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Schreibt den Checkpoint des Laufs fort (legt ihn beim ersten Aufruf an)
+     */
+    public void saveCheckpoint(EPASyncJob job, long lastPatientId, long processed, String status) {
+        LocalDateTime now = LocalDateTime.now();
+        EPASyncCheckpoint checkpoint = em.find(EPASyncCheckpoint.class, job.getRunId());
+        if (checkpoint == null) {
+            checkpoint = new EPASyncCheckpoint(job.getRunId(), job.getMode(), job.isChangedOnly(), now);
+            em.persist(checkpoint);
+        }
+        checkpoint.setLastPatientId(lastPatientId);
+        checkpoint.setProcessed(processed);
+        checkpoint.setStatus(status);
+        checkpoint.setUpdatedAt(now);
+    }
+
+    public int deleteCheckpointsOlderThan(LocalDateTime before) {
+        return em.createNamedQuery("EPASyncCheckpoint.deleteOlderThan")
+                .setParameter("before", before)
+                .executeUpdate();
+    }
+
+    /**
+     * Speichert das Ergebnis der Übertragung am Patienten. Wurde der Patient
+     * währenddessen geändert, bleibt er für den nächsten Delta-Sync offen.
+     */
+    public void recordResult(Patient patient, EPAResponse response) {
+        if (response.isSuccess()) {
+            em.createNamedQuery("Patient.markEpaSynced")
+                    .setParameter("epaId", response.getEpaId())
+                    .setParameter("payloadHash", response.getPayloadHash())
+                    .setParameter("id", patient.getId())
+                    .setParameter("updatedAt", patient.getUpdatedAt())
+                    .executeUpdate();
+        } else {
+            em.createNamedQuery("Patient.markEpaSyncError")
+                    .setParameter("error", response.getMessage())
+                    .setParameter("id", patient.getId())
+                    .executeUpdate();
+        }
+    }
+}
@@ -1,22 +1,55 @@
 package com.hospital.epa;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Public result object for bulk EPA synchronization.
+ * Counters are thread-safe so concurrent senders can record into one instance.
  */
 public class EPASyncResult {
-    private int successCount;
-    private int failedCount;
+    private final AtomicInteger successCount;
+    private final AtomicInteger failedCount;
+    private final AtomicInteger skippedCount = new AtomicInteger();
+
+    public EPASyncResult() {
+        this(0, 0);
+    }
 
     public EPASyncResult(int successCount, int failedCount) {
-        this.successCount = successCount;
-        this.failedCount = failedCount;
+        this.successCount = new AtomicInteger(successCount);
+        this.failedCount = new AtomicInteger(failedCount);
+    }
+
+    /**
+     * Records a single outcome; unchanged patients count as skipped, not as success.
+     */
+    public void record(EPAResponse response) {
+        if (response.isSkipped()) {
+            skippedCount.incrementAndGet();
+        } else if (response.isSuccess()) {
+            successCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+    }
+
+    public void recordSuccess() {
+        successCount.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        failedCount.incrementAndGet();
     }
 
     public int getSuccessCount() {
-        return successCount;
+        return successCount.get();
     }
 
     public int getFailedCount() {
-        return failedCount;
+        return failedCount.get();
+    }
+
+    public int getSkippedCount() {
+        return skippedCount.get();
     }
 }
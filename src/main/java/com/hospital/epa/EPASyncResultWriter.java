@@ -0,0 +1,124 @@
+package com.hospital.epa;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.hospital.entity.Patient;
+
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * Speichert die Ergebnisse eines Sync-Blocks mengenbasiert: ein
+ * UPDATE ... FROM (VALUES ...) für erfolgreiche und eines für fehlgeschlagene
+ * Patienten, in einer Transaktion statt einer Transaktion pro Patient.
+ */
+@Stateless
+public class EPASyncResultWriter {
+
+    // Höchstens so viele Zeilen pro Statement (PostgreSQL erlaubt 32767 Bind-Parameter)
+    static final int MAX_ROWS_PER_STATEMENT = 1000;
+
+    // Wie Patient.markEpaSynced: nur, wenn der Patient seit dem Lesen nicht geändert wurde
+    private static final String SYNCED_SQL = "UPDATE patients p SET "
+            + "epa_id = COALESCE(v.epa_id, p.epa_id), "
+            + "epa_payload_hash = COALESCE(v.payload_hash, p.epa_payload_hash), "
+            + "epa_sync_status = 'synced', epa_last_sync = CURRENT_TIMESTAMP, epa_sync_error = NULL "
+            + "FROM (VALUES %s) AS v(id, epa_id, payload_hash, updated_at) "
+            + "WHERE p.id = v.id AND (p.updated_at = v.updated_at OR p.updated_at IS NULL)";
+
+    private static final String SYNCED_ROW = "(CAST(?%d AS bigint), CAST(?%d AS varchar), CAST(?%d AS varchar), "
+            + "CAST(?%d AS timestamp))";
+
+    private static final String ERROR_SQL = "UPDATE patients p SET "
+            + "epa_sync_status = 'error', epa_sync_error = v.error "
+            + "FROM (VALUES %s) AS v(id, error) WHERE p.id = v.id";
+
+    private static final String ERROR_ROW = "(CAST(?%d AS bigint), CAST(?%d AS text))";
+
+    /**
+     * Ergebnis der Übertragung eines Patienten
+     */
+    public static final class Outcome {
+        private final Long patientId;
+        private final LocalDateTime updatedAt;
+        private final EPAResponse response;
+
+        public Outcome(Patient patient, EPAResponse response) {
+            this.patientId = patient.getId();
+            this.updatedAt = patient.getUpdatedAt();
+            this.response = response;
+        }
+
+        public Long getPatientId() {
+            return patientId;
+        }
+
+        public EPAResponse getResponse() {
+            return response;
+        }
+    }
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    /**
+     * Schreibt alle Ergebnisse; liefert die Anzahl geänderter Patienten
+     */
+    public int write(List<Outcome> outcomes) {
+        List<Outcome> synced = new ArrayList<>();
+        List<Outcome> failed = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            (outcome.response.isSuccess() ? synced : failed).add(outcome);
+        }
+        int updated = 0;
+        for (int from = 0; from < synced.size(); from += MAX_ROWS_PER_STATEMENT) {
+            updated += writeSynced(synced.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, synced.size())));
+        }
+        for (int from = 0; from < failed.size(); from += MAX_ROWS_PER_STATEMENT) {
+            updated += writeFailed(failed.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, failed.size())));
+        }
+        return updated;
+    }
+
+    private int writeSynced(List<Outcome> rows) {
+        Query query = em.createNativeQuery(String.format(SYNCED_SQL, values(SYNCED_ROW, 4, rows.size())));
+        int position = 1;
+        for (Outcome row : rows) {
+            query.setParameter(position++, row.patientId);
+            query.setParameter(position++, row.response.getEpaId());
+            query.setParameter(position++, row.response.getPayloadHash());
+            query.setParameter(position++, row.updatedAt);
+        }
+        return query.executeUpdate();
+    }
+
+    private int writeFailed(List<Outcome> rows) {
+        Query query = em.createNativeQuery(String.format(ERROR_SQL, values(ERROR_ROW, 2, rows.size())));
+        int position = 1;
+        for (Outcome row : rows) {
+            query.setParameter(position++, row.patientId);
+            query.setParameter(position++, row.response.getMessage());
+        }
+        return query.executeUpdate();
+    }
+
+    // "(?1, ?2), (?3, ?4), ..." mit fortlaufenden Parameter-Positionen
+    static String values(String rowTemplate, int columns, int rows) {
+        StringBuilder values = new StringBuilder();
+        Object[] positions = new Object[columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                positions[column] = row * columns + column + 1;
+            }
+            if (row > 0) {
+                values.append(", ");
+            }
+            values.append(String.format(rowTemplate, positions));
+        }
+        return values.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.hospital.epa;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP-Transport für EPA-Aufrufe. Die Antwort wird als Future geliefert, bei
+ * synchronen Transporten bereits abgeschlossen; ein Abbrechen des Futures bricht
+ * einen laufenden Request ab.
+ */
+public interface EPATransport {
+
+    /**
+     * Sendet einen Request
+     *
+     * @param body Request-Body oder null (GET)
+     * @param timeout Zeitlimit für den gesamten Request
+     */
+    CompletableFuture<EPAHttpResponse> send(String method, URI uri, Map<String, String> headers, String body,
+            Duration timeout);
+
+    /**
+     * Name für Logs und Metriken
+     */
+    String getName();
+}
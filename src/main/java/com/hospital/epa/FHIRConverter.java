@@ -1,5 +1,11 @@
 package com.hospital.epa;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
 import com.hospital.entity.Patient;
 
 import jakarta.ejb.Stateless;
@@ -7,6 +13,7 @@ import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
 
 /**
  * Konverter für FHIR-Standard (Fast Healthcare Interoperability Resources)
@@ -15,10 +22,41 @@ import jakarta.json.JsonObjectBuilder;
 @Stateless
 public class FHIRConverter {
 
+    // Identifier-System der Versicherungsnummer
+    static final String INSURANCE_SYSTEM = "urn:oid:1.2.276.0.76.4.8";
+
     /**
      * Konvertiert einen Patient in FHIR R4 JSON-Format
      */
     public String patientToFHIR(Patient patient) {
+        return patientToFHIRObject(patient).toString();
+    }
+
+    /**
+     * SHA-256 (hex) eines FHIR-Dokuments zur Erkennung unveränderter Inhalte
+     */
+    public static String payloadHash(String fhirJson) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(fhirJson.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Suchkriterium für bedingtes Anlegen (If-None-Exist / ifNoneExist) über die Versicherungsnummer
+     */
+    public static String conditionalCreateQuery(Patient patient) {
+        return "identifier=" + URLEncoder.encode(INSURANCE_SYSTEM + "|" + patient.getInsuranceNumber(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Konvertiert einen Patient in eine FHIR R4 Patient-Resource
+     */
+    public JsonObject patientToFHIRObject(Patient patient) {
         JsonObjectBuilder builder = Json.createObjectBuilder();
 
         // FHIR Resource Type
@@ -28,7 +66,7 @@ public class FHIRConverter {
         JsonArrayBuilder identifierArray = Json.createArrayBuilder();
         identifierArray.add(Json.createObjectBuilder()
                 .add("use", "official")
-                .add("system", "urn:oid:1.2.276.0.76.4.8")
+                .add("system", INSURANCE_SYSTEM)
                 .add("value", patient.getInsuranceNumber()));
         builder.add("identifier", identifierArray);
 
@@ -121,8 +159,7 @@ public class FHIRConverter {
             builder.add("contact", contactArray);
         }
 
-        JsonObject fhirPatient = builder.build();
-        return fhirPatient.toString();
+        return builder.build();
     }
 
     /**
@@ -214,11 +251,91 @@ public class FHIRConverter {
         JsonArrayBuilder entries = Json.createArrayBuilder();
         for (Patient patient : patients) {
             entries.add(Json.createObjectBuilder()
-                    .add("resource", Json.createReader(
-                            new java.io.StringReader(patientToFHIR(patient))).readObject()));
+                    .add("resource", patientToFHIRObject(patient)));
         }
 
         bundle.add("entry", entries);
         return bundle.build().toString();
     }
+
+    /**
+     * Erstellt eine FHIR transaction- oder batch-Bundle zum Anlegen mehrerer Patienten
+     * mit einem einzigen Request. Die Antwort-Einträge der EPA entsprechen in ihrer
+     * Reihenfolge den Einträgen dieses Bundles.
+     */
+    public String createTransactionBundle(java.util.List<Patient> patients, String type) {
+        if (!"transaction".equals(type) && !"batch".equals(type)) {
+            throw new IllegalArgumentException("Bundle-Typ muss 'transaction' oder 'batch' sein: " + type);
+        }
+
+        JsonObjectBuilder bundle = Json.createObjectBuilder();
+        bundle.add("resourceType", "Bundle");
+        bundle.add("type", type);
+
+        JsonArrayBuilder entries = Json.createArrayBuilder();
+        for (Patient patient : patients) {
+            // Bekannte Patienten aktualisieren, neue nur anlegen, wenn die Versicherungsnummer unbekannt ist
+            JsonObjectBuilder request = patient.getEpaId() != null
+                    ? Json.createObjectBuilder()
+                            .add("method", "PUT")
+                            .add("url", "Patient/" + patient.getEpaId())
+                    : Json.createObjectBuilder()
+                            .add("method", "POST")
+                            .add("url", "Patient")
+                            .add("ifNoneExist", conditionalCreateQuery(patient));
+            entries.add(Json.createObjectBuilder()
+                    .add("fullUrl", "urn:uuid:" + java.util.UUID.randomUUID())
+                    .add("resource", patientToFHIRObject(patient))
+                    .add("request", request));
+        }
+
+        bundle.add("entry", entries);
+        return bundle.build().toString();
+    }
+
+    /**
+     * Wertet eine transaction-response/batch-response-Bundle aus.
+     * Liefert pro Eintrag ein Ergebnis mit der EPA-ID aus response.location.
+     */
+    public java.util.List<EPAResponse> parseBundleResponse(String bundleJson) {
+        JsonObject bundle = Json.createReader(new java.io.StringReader(bundleJson)).readObject();
+        java.util.List<EPAResponse> results = new java.util.ArrayList<>();
+        if (!bundle.containsKey("entry")) {
+            return results;
+        }
+
+        for (JsonValue value : bundle.getJsonArray("entry")) {
+            JsonObject entry = value.asJsonObject();
+            JsonObject response = entry.containsKey("response") ? entry.getJsonObject("response") : null;
+            String status = response != null ? response.getString("status", "") : "";
+            boolean success = status.startsWith("2");
+            String epaId = null;
+            if (success) {
+                epaId = extractPatientId(response.getString("location", null));
+                if (epaId == null && entry.containsKey("resource")) {
+                    epaId = entry.getJsonObject("resource").getString("id", null);
+                }
+            }
+            results.add(new EPAResponse(success, epaId,
+                    success ? "Patient erfolgreich übertragen" : "Fehler bei EPA-Übertragung: " + status));
+        }
+        return results;
+    }
+
+    /**
+     * Extrahiert die Patient-ID aus einer Location wie "Patient/123/_history/1"
+     */
+    static String extractPatientId(String location) {
+        if (location == null) {
+            return null;
+        }
+        int start = location.indexOf("Patient/");
+        if (start < 0) {
+            return null;
+        }
+        String rest = location.substring(start + "Patient/".length());
+        int end = rest.indexOf('/');
+        String id = end >= 0 ? rest.substring(0, end) : rest;
+        return id.isEmpty() ? null : id;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.hospital.rest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Request-Body für POST /patients/bulk-status.
+ * Patienten werden entweder über eine ID-Liste oder über einen Filter ausgewählt.
+ */
+public class BulkStatusRequest {
+
+    private String status; // active, discharged
+    private List<Long> ids;
+
+    // Filter (nur ausgewertet, wenn keine IDs angegeben sind)
+    private String currentStatus;
+    private LocalDateTime admittedBefore;
+
+    public BulkStatusRequest() {
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public String getCurrentStatus() {
+        return currentStatus;
+    }
+
+    public void setCurrentStatus(String currentStatus) {
+        this.currentStatus = currentStatus;
+    }
+
+    public LocalDateTime getAdmittedBefore() {
+        return admittedBefore;
+    }
+
+    public void setAdmittedBefore(LocalDateTime admittedBefore) {
+        this.admittedBefore = admittedBefore;
+    }
+
+    public boolean hasIds() {
+        return ids != null && !ids.isEmpty();
+    }
+
+    public boolean hasFilter() {
+        return (currentStatus != null && !currentStatus.isBlank()) || admittedBefore != null;
+    }
+}
@@ -1,18 +1,30 @@
 package com.hospital.rest;
 
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.logging.Logger;
 
 import com.hospital.entity.Patient;
+import com.hospital.epa.EPAConfigService;
+import com.hospital.epa.EPAHealthProber;
+import com.hospital.epa.EPAImportService;
 import com.hospital.epa.EPAIntegrationService;
+import com.hospital.epa.EPAMetrics;
+import com.hospital.epa.EPAOutbox;
+import com.hospital.epa.EPASyncJob;
+import com.hospital.epa.EPASyncJobManager;
 
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
@@ -36,12 +48,39 @@ public class EPAResource {
     @Inject
     private EPAIntegrationService epaService;
 
+    @Inject
+    private IdempotencyService idempotency;
+
+    @Inject
+    private EPAMetrics metrics;
+
+    @Inject
+    private EPASyncJobManager jobManager;
+
+    @Inject
+    private EPAOutbox outbox;
+
+    @Inject
+    private EPAHealthProber healthProber;
+
+    @Inject
+    private EPAConfigService configService;
+
+    @Inject
+    private EPAImportService importService;
+
     /**
      * Sendet einen einzelnen Patienten an die EPA
      */
     @POST
     @Path("/sync/{patientId}")
-    public Response syncPatientToEPA(@PathParam("patientId") Long patientId) {
+    public Response syncPatientToEPA(@PathParam("patientId") Long patientId,
+            @HeaderParam(IdempotencyService.HEADER) String idempotencyKey) {
+        return idempotency.execute(idempotencyKey, "POST /epa/sync/" + patientId,
+                () -> syncPatient(patientId));
+    }
+
+    private Response syncPatient(Long patientId) {
         try {
             Patient patient = em.find(Patient.class, patientId);
             if (patient == null) {
@@ -61,6 +100,7 @@ public class EPAResource {
             if (result.isSuccess()) {
                 // Aktualisiere Patient mit EPA-Informationen
                 patient.setEpaId(result.getEpaId());
+                patient.setEpaPayloadHash(result.getPayloadHash());
                 patient.setEpaSyncStatus("synced");
                 patient.setEpaLastSync(LocalDateTime.now());
                 patient.setEpaSyncError(null);
@@ -90,31 +130,48 @@ public class EPAResource {
     }
 
     /**
-     * Synchronisiert alle Patienten mit der EPA
+     * Startet die Synchronisation aller Patienten mit der EPA als Hintergrund-Job.
+     * Mit mode=bundle werden die Patienten als FHIR-Bundles gebündelt übertragen,
+     * mit scope=changed nur geänderte oder fehlgeschlagene Patienten (Delta-Sync).
+     * Antwortet sofort mit 202 und der Job-URL für die Fortschrittsabfrage.
      */
     @POST
     @Path("/sync-all")
-    public Response syncAllPatientsToEPA() {
+    public Response syncAllPatientsToEPA(@QueryParam("mode") String mode, @QueryParam("scope") String scope) {
         try {
-            List<Patient> patients = em.createNamedQuery("Patient.findActive", Patient.class)
-                    .getResultList();
-
-            // Filtere nur Patienten mit EPA-Einwilligung
-            List<Patient> epaEnabledPatients = patients.stream()
-                    .filter(p -> Boolean.TRUE.equals(p.getEpaEnabled()))
-                    .toList();
+            // Der Modus landet im Job-JSON und als Schlüssel im Checkpoint, daher nur bekannte Werte
+            if (mode != null && !"single".equals(mode) && !"bundle".equals(mode)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"mode muss 'single' oder 'bundle' sein\"}").build();
+            }
+            if (scope != null && !"all".equals(scope) && !"changed".equals(scope)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"scope muss 'all' oder 'changed' sein\"}").build();
+            }
+            boolean changedOnly = "changed".equals(scope);
+            Long candidates = em.createNamedQuery(
+                    changedOnly ? "Patient.countEpaDeltaCandidates" : "Patient.countEpaSyncCandidates", Long.class)
+                    .getSingleResult();
 
-            if (epaEnabledPatients.isEmpty()) {
+            if (candidates == 0) {
                 return Response.ok()
-                        .entity("{\"message\": \"Keine Patienten mit EPA-Einwilligung gefunden\"}").build();
+                        .entity(changedOnly
+                                ? "{\"message\": \"Keine geänderten Patienten zu synchronisieren\"}"
+                                : "{\"message\": \"Keine Patienten mit EPA-Einwilligung gefunden\"}")
+                        .build();
             }
 
-            var result = epaService.syncAllPatientsToEPA(epaEnabledPatients);
+            EPASyncJob running = jobManager.getActiveJob();
+            if (running != null) {
+                return Response.status(Response.Status.CONFLICT)
+                        .entity("{\"error\": \"EPA-Synchronisation läuft bereits\", \"jobId\": \""
+                                + running.getId() + "\"}")
+                        .build();
+            }
 
-            return Response.ok()
-                    .entity("{\"success\": " + result.getSuccessCount() +
-                            ", \"failed\": " + result.getFailedCount() +
-                            ", \"total\": " + epaEnabledPatients.size() + "}")
+            EPASyncJob job = jobManager.start(mode, changedOnly);
+            return Response.accepted(job.toJson())
+                    .location(URI.create("epa/jobs/" + job.getId()))
                     .build();
 
         } catch (Exception e) {
@@ -124,6 +181,39 @@ public class EPAResource {
         }
     }
 
+    /**
+     * Liefert Status und Fortschritt eines Sync-Jobs
+     */
+    @GET
+    @Path("/jobs/{jobId}")
+    public Response getSyncJob(@PathParam("jobId") String jobId) {
+        EPASyncJob job = jobManager.getJob(jobId);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("{\"error\": \"Job nicht gefunden\"}").build();
+        }
+        return Response.ok(job.toJson()).build();
+    }
+
+    /**
+     * Bricht einen laufenden Sync-Job ab
+     */
+    @DELETE
+    @Path("/jobs/{jobId}")
+    public Response cancelSyncJob(@PathParam("jobId") String jobId) {
+        EPASyncJob job = jobManager.getJob(jobId);
+        if (job == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("{\"error\": \"Job nicht gefunden\"}").build();
+        }
+        if (job.isFinished()) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("{\"error\": \"Job ist bereits beendet\"}").build();
+        }
+        jobManager.cancel(jobId);
+        return Response.accepted(job.toJson()).build();
+    }
+
     /**
      * Aktiviert EPA für einen Patienten (Einwilligungserklärung)
      */
@@ -148,6 +238,7 @@ public class EPAResource {
 
             em.merge(patient);
             em.flush();
+            outbox.enqueue(patient);
 
             String message = enabled ? "EPA-Einwilligung erteilt" : "EPA-Einwilligung widerrufen";
             return Response.ok()
@@ -212,20 +303,75 @@ public class EPAResource {
     }
 
     /**
-     * Testet die EPA-Verbindung
+     * Importiert Patienten aus der EPA anhand einer Liste von EPA-IDs (JSON-Array).
+     * Bekannte Patienten werden über EPA-ID oder Versicherungsnummer zugeordnet und aktualisiert.
+     * Läuft synchron, daher höchstens EPA_IMPORT_MAX_PATIENTS Patienten pro Request (sonst 400).
+     */
+    @POST
+    @Path("/import")
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Response importFromEPA(List<String> epaIds) {
+        if (epaIds == null || epaIds.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Keine EPA-IDs angegeben\"}").build();
+        }
+        try {
+            return Response.ok(importService.importByEpaIds(epaIds).toJson()).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        } catch (Exception e) {
+            LOGGER.severe("Fehler beim EPA-Import: " + e.getMessage());
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        }
+    }
+
+    /**
+     * Importiert Patienten aus einem EPA-Suchergebnis (FHIR-Bundle) oder $export-Ergebnis (NDJSON)
+     */
+    @POST
+    @Path("/import/fhir")
+    @Consumes({ "application/fhir+json", "application/x-ndjson", "application/fhir+ndjson",
+            MediaType.APPLICATION_JSON })
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Response importFhirFromEPA(String content) {
+        try {
+            return Response.ok(importService.importFromFhir(content).toJson()).build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        } catch (Exception e) {
+            LOGGER.severe("Fehler beim EPA-Import: " + e.getMessage());
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+        }
+    }
+
+    /**
+     * Liefert den zuletzt geprüften EPA-Verbindungsstatus (force=true prüft sofort neu)
      */
     @GET
     @Path("/test-connection")
-    public Response testConnection() {
+    public Response testConnection(@QueryParam("force") boolean force) {
         try {
-            boolean connected = epaService.testEPAConnection();
-
-            if (connected) {
+            // Antwort aus dem Ergebnis der Hintergrundprüfung, nur mit force=true neu prüfen
+            EPAHealthProber.Status health = healthProber.getStatus(force);
+            String details = "\"circuitBreaker\": \"" + epaService.getCircuitState() + "\", "
+                    + "\"checkedAt\": \"" + health.getCheckedAt() + "\", "
+                    + "\"ageSeconds\": " + healthProber.getAgeSeconds(health) + ", "
+                    + "\"latencyMs\": " + health.getLatencyMillis();
+
+            if (health.isConnected()) {
                 return Response.ok()
-                        .entity("{\"connected\": true, \"message\": \"EPA-Verbindung erfolgreich\"}").build();
+                        .entity("{\"connected\": true, \"message\": \"EPA-Verbindung erfolgreich\", "
+                                + details + "}")
+                        .build();
             } else {
                 return Response.status(Response.Status.SERVICE_UNAVAILABLE)
-                        .entity("{\"connected\": false, \"message\": \"EPA nicht erreichbar\"}").build();
+                        .entity("{\"connected\": false, \"message\": \"EPA nicht erreichbar\", "
+                                + details + "}")
+                        .build();
             }
 
         } catch (Exception e) {
@@ -267,4 +413,26 @@ public class EPAResource {
                     .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Liefert Laufzeitmetriken der EPA-Kommunikation (u.a. Connection-Pool)
+     */
+    @GET
+    @Path("/metrics")
+    public Response getEPAMetrics() {
+        return Response.ok(metrics.toJson()).build();
+    }
+
+    /**
+     * Lädt epa_configuration sofort neu, statt auf die minütliche Aktualisierung zu warten
+     */
+    @POST
+    @Path("/config/reload")
+    public Response reloadConfiguration() {
+        if (!configService.reload()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("{\"error\": \"EPA-Konfiguration konnte nicht geladen werden\"}").build();
+        }
+        return Response.ok("{\"reloaded\": true, \"keys\": " + configService.size() + "}").build();
+    }
+}
@@ -0,0 +1,202 @@
+package com.hospital.rest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import com.hospital.entity.IdempotencyRecord;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import jakarta.ws.rs.core.GenericEntity;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Speichert Ergebnisse von POST-Anfragen mit Idempotency-Key.
+ * Wiederholungen nach Timeouts erhalten die gespeicherte Antwort, statt die
+ * Operation erneut auszuführen. Persistiert in idempotency_keys mit Ablaufzeit,
+ * ergänzt um einen begrenzten In-Memory-Index für schnelle Treffer.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAY_HEADER = "Idempotent-Replayed";
+
+    private static final Logger LOGGER = Logger.getLogger(IdempotencyService.class.getName());
+
+    private static final Duration TTL = Duration.ofHours(24);
+    private static final int MAX_INDEX_SIZE = 10_000;
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private static final Jsonb JSONB = JsonbBuilder.create();
+
+    @PersistenceContext(unitName = "hospitalPU")
+    private EntityManager em;
+
+    @Resource
+    private TransactionSynchronizationRegistry txRegistry;
+
+    // LRU-Index der zuletzt abgeschlossenen Anfragen
+    private final Map<String, IdempotencyRecord> index = Collections.synchronizedMap(
+            new LinkedHashMap<String, IdempotencyRecord>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                    return size() > MAX_INDEX_SIZE;
+                }
+            });
+
+    // Keys, deren erste Ausführung noch läuft
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Führt die Aktion höchstens einmal pro Idempotency-Key aus. Ohne Key wird
+     * die Aktion direkt ausgeführt. Nur erfolgreiche Antworten (2xx) werden
+     * gespeichert, damit fehlgeschlagene Versuche wiederholt werden können.
+     */
+    public Response execute(String key, String endpoint, Supplier<Response> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\": \"Idempotency-Key zu lang (max. " + MAX_KEY_LENGTH + " Zeichen)\"}")
+                    .build();
+        }
+
+        IdempotencyRecord stored = lookup(key);
+        if (stored != null) {
+            return replay(stored, endpoint);
+        }
+
+        if (!inFlight.add(key)) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("{\"error\": \"Anfrage mit diesem Idempotency-Key wird bereits verarbeitet\"}")
+                    .build();
+        }
+
+        boolean handedOver = false;
+        try {
+            Response response = action.get();
+            if (response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
+                LocalDateTime now = LocalDateTime.now();
+                IdempotencyRecord record = new IdempotencyRecord(key, endpoint, response.getStatus(),
+                        serialize(response.getEntity()), now, now.plus(TTL));
+                // merge statt persist: ein abgelaufener, noch nicht gelöschter Eintrag wird überschrieben
+                em.merge(record);
+                publishAfterCommit(record);
+                handedOver = true;
+            }
+            return response;
+        } finally {
+            if (!handedOver) {
+                inFlight.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Liefert das gespeicherte Ergebnis zu einem Key oder null
+     */
+    public IdempotencyRecord lookup(String key) {
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord record = index.get(key);
+        if (record == null) {
+            record = em.find(IdempotencyRecord.class, key);
+            if (record != null) {
+                index.put(key, record);
+            }
+        }
+        if (record != null && record.isExpired(now)) {
+            index.remove(key);
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Löscht abgelaufene Einträge aus Tabelle und Index
+     */
+    @Schedule(hour = "*", minute = "*/15", persistent = false)
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int deleted = em.createNamedQuery("IdempotencyRecord.deleteExpired")
+                .setParameter("now", now)
+                .executeUpdate();
+        synchronized (index) {
+            index.values().removeIf(r -> r.isExpired(now));
+        }
+        if (deleted > 0) {
+            LOGGER.info(deleted + " abgelaufene Idempotency-Keys gelöscht");
+        }
+    }
+
+    private Response replay(IdempotencyRecord record, String endpoint) {
+        if (!record.getEndpoint().equals(endpoint)) {
+            return Response.status(422)
+                    .entity("{\"error\": \"Idempotency-Key wurde bereits für " + record.getEndpoint()
+                            + " verwendet\"}")
+                    .build();
+        }
+        return Response.status(record.getResponseStatus())
+                .entity(record.getResponseBody())
+                .type(MediaType.APPLICATION_JSON)
+                .header(REPLAY_HEADER, "true")
+                .build();
+    }
+
+    // Index erst nach erfolgreichem Commit befüllen, sonst würde ein Rollback repliziert
+    private void publishAfterCommit(IdempotencyRecord record) {
+        String key = record.getKey();
+        if (txRegistry == null || txRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            index.put(key, record);
+            inFlight.remove(key);
+            return;
+        }
+        txRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nichts zu tun
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    index.put(key, record);
+                }
+                inFlight.remove(key);
+            }
+        });
+    }
+
+    private String serialize(Object entity) {
+        if (entity == null) {
+            return null;
+        }
+        if (entity instanceof String s) {
+            return s;
+        }
+        if (entity instanceof GenericEntity<?> generic) {
+            return JSONB.toJson(generic.getEntity());
+        }
+        return JSONB.toJson(entity);
+    }
+}
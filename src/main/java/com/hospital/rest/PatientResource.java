@@ -1,15 +1,21 @@
 package com.hospital.rest;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 import com.hospital.entity.Patient;
+import com.hospital.epa.EPAOutbox;
 
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import jakarta.persistence.Cache;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
@@ -26,9 +32,22 @@ import jakarta.ws.rs.core.Response;
 @Consumes(MediaType.APPLICATION_JSON)
 public class PatientResource {
 
+    // Obergrenze für IN-Listen pro UPDATE (PostgreSQL erlaubt max. 32767 Bind-Parameter)
+    private static final int BULK_CHUNK_SIZE = 1000;
+
+    // Entspricht hibernate.jdbc.batch_size in persistence.xml
+    private static final int BATCH_FLUSH_SIZE = 20;
+
     @PersistenceContext(unitName = "hospitalPU")
     private EntityManager em;
 
+    @Inject
+    private IdempotencyService idempotency;
+
+    // Änderungen an EPA-Patienten in derselben Transaktion zur Übertragung vormerken
+    @Inject
+    private EPAOutbox outbox;
+
     @GET
     public Response getAllPatients(@QueryParam("status") String status) {
         try {
@@ -173,17 +192,143 @@ public class PatientResource {
     }
 
     @POST
-    public Response createPatient(Patient patient) {
+    public Response createPatient(@HeaderParam(IdempotencyService.HEADER) String idempotencyKey,
+            Patient patient) {
+        return idempotency.execute(idempotencyKey, "POST /patients", () -> {
+            try {
+                em.persist(patient);
+                em.flush();
+                outbox.enqueue(patient);
+                return Response.status(Response.Status.CREATED).entity(patient).build();
+            } catch (Exception e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+            }
+        });
+    }
+
+    /**
+     * Legt mehrere Patienten in einer Transaktion an
+     */
+    @POST
+    @Path("/batch")
+    public Response createPatients(@HeaderParam(IdempotencyService.HEADER) String idempotencyKey,
+            List<Patient> patients) {
+        return idempotency.execute(idempotencyKey, "POST /patients/batch", () -> {
+            try {
+                if (patients == null || patients.isEmpty()) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity("{\"error\": \"Keine Patienten übergeben\"}").build();
+                }
+                for (int i = 0; i < patients.size(); i++) {
+                    em.persist(patients.get(i));
+                    // Im Takt von hibernate.jdbc.batch_size flushen
+                    if ((i + 1) % BATCH_FLUSH_SIZE == 0) {
+                        em.flush();
+                    }
+                }
+                em.flush();
+                patients.forEach(outbox::enqueue);
+                GenericEntity<List<Patient>> entity = new GenericEntity<List<Patient>>(patients) {
+                };
+                return Response.status(Response.Status.CREATED).entity(entity).build();
+            } catch (Exception e) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
+            }
+        });
+    }
+
+    /**
+     * Entlässt oder reaktiviert mehrere Patienten mit einem mengenbasierten UPDATE,
+     * ohne die Entities einzeln zu laden. Geänderte Patienten mit EPA-Freigabe kommen in
+     * derselben Transaktion in die Outbox, da der Status als FHIR "active" übertragen wird.
+     */
+    @POST
+    @Path("/bulk-status")
+    public Response bulkUpdateStatus(BulkStatusRequest request) {
         try {
-            em.persist(patient);
+            if (request == null || !("active".equals(request.getStatus())
+                    || "discharged".equals(request.getStatus()))) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"Status muss 'active' oder 'discharged' sein\"}").build();
+            }
+            if (!request.hasIds() && !request.hasFilter()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("{\"error\": \"IDs oder Filter erforderlich\"}").build();
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime dischargeDate = "discharged".equals(request.getStatus()) ? now : null;
+
+            // Ausstehende Änderungen schreiben, bevor das UPDATE am Persistenzkontext vorbeiläuft
             em.flush();
-            return Response.status(Response.Status.CREATED).entity(patient).build();
+
+            int updated = 0;
+            Cache cache = em.getEntityManagerFactory().getCache();
+            if (request.hasIds()) {
+                List<Long> ids = request.getIds();
+                for (int from = 0; from < ids.size(); from += BULK_CHUNK_SIZE) {
+                    List<Long> chunk = ids.subList(from, Math.min(from + BULK_CHUNK_SIZE, ids.size()));
+                    updated += executeStatusUpdate(request, chunk, dischargeDate, now);
+                }
+                for (Long id : ids) {
+                    cache.evict(Patient.class, id);
+                }
+            } else {
+                updated = executeStatusUpdate(request, null, dischargeDate, now);
+                // Betroffene IDs sind unbekannt, daher die gesamte Patient-Region verwerfen
+                cache.evict(Patient.class);
+            }
+
+            // Bereits geladene Instanzen sind nach dem Bulk-UPDATE veraltet
+            em.clear();
+
+            return Response.ok()
+                    .entity("{\"updated\": " + updated + ", \"status\": \"" + request.getStatus() + "\"}")
+                    .build();
         } catch (Exception e) {
-            return Response.status(Response.Status.BAD_REQUEST)
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("{\"error\": \"" + e.getMessage() + "\"}").build();
         }
     }
 
+    // UPDATE nach ID-Liste (ids) oder Filter; schreibt in derselben Anweisung die Outbox-Einträge
+    private int executeStatusUpdate(BulkStatusRequest request, List<Long> ids, LocalDateTime dischargeDate,
+            LocalDateTime now) {
+        boolean byCurrentStatus = request.getCurrentStatus() != null && !request.getCurrentStatus().isBlank();
+        StringBuilder sql = new StringBuilder("UPDATE patients SET status = :status, ")
+                .append("discharge_date = CAST(:dischargeDate AS timestamp), updated_at = :now ")
+                .append("WHERE status <> :status");
+        if (ids != null) {
+            sql.append(" AND id IN (:ids)");
+        } else {
+            if (byCurrentStatus) {
+                sql.append(" AND status = :currentStatus");
+            }
+            if (request.getAdmittedBefore() != null) {
+                sql.append(" AND admission_date < :admittedBefore");
+            }
+        }
+        sql.append(" RETURNING id, epa_enabled");
+
+        Query query = em.createNativeQuery(EPAOutbox.enqueueChanged(sql.toString()))
+                .setParameter("status", request.getStatus())
+                .setParameter("dischargeDate", dischargeDate)
+                .setParameter("now", now);
+        if (ids != null) {
+            query.setParameter("ids", ids);
+        } else {
+            if (byCurrentStatus) {
+                query.setParameter("currentStatus", request.getCurrentStatus());
+            }
+            if (request.getAdmittedBefore() != null) {
+                query.setParameter("admittedBefore", request.getAdmittedBefore());
+            }
+        }
+        return ((Number) query.getSingleResult()).intValue();
+    }
+
     @PUT
     @Path("/{id}")
     public Response updatePatient(@PathParam("id") Long id, Patient updatedPatient) {
@@ -211,6 +356,7 @@ public class PatientResource {
 
             em.merge(patient);
             em.flush();
+            outbox.enqueue(patient);
             return Response.ok(patient).build();
         } catch (Exception e) {
             return Response.status(Response.Status.BAD_REQUEST)
@@ -1,11 +1,12 @@
 // EPA Service Functions
 
-async function checkEPAConnection() {
+// Seitenaufruf nutzt den Status der Hintergrundprüfung, der Button erzwingt eine neue Prüfung
+async function checkEPAConnection(force = false) {
     const banner = document.getElementById('epaStatusBanner');
     const statusText = document.getElementById('epaStatusText');
 
     try {
-        const response = await fetch(`${EPA_API_URL}/test-connection`);
+        const response = await fetch(`${EPA_API_URL}/test-connection${force ? '?force=true' : ''}`);
 
         if (!response.ok) {
             const text = await response.text().catch(() => '');
@@ -102,12 +103,34 @@ async function syncAllToEPA() {
         });
 
         const result = await response.json();
+        if (response.status !== 202) {
+            await showAlert(result.message || result.error, 'Ergebnis');
+            return;
+        }
+
+        const job = await waitForSyncJob(result.jobId);
         await showAlert(
-            `Synchronisation abgeschlossen:\n✓ Erfolgreich: ${result.success}\n✗ Fehlgeschlagen: ${result.failed}\nGesamt: ${result.total}`,
+            `Synchronisation ${job.status === 'COMPLETED' ? 'abgeschlossen' : 'beendet (' + job.status + ')'}:\n` +
+            `✓ Erfolgreich: ${job.succeeded}\n✗ Fehlgeschlagen: ${job.failed}\nGesamt: ${job.total}`,
             'Ergebnis'
         );
         refreshPatients();
     } catch (error) {
         await showAlert('Fehler bei Massen-Synchronisation: ' + error.message, 'Fehler');
     }
+}
+
+// Fragt den Sync-Job ab, bis er beendet ist
+async function waitForSyncJob(jobId) {
+    while (true) {
+        const response = await fetch(`${EPA_API_URL}/jobs/${jobId}`);
+        const job = await response.json();
+        if (!response.ok) {
+            throw new Error(job.error);
+        }
+        if (['COMPLETED', 'CANCELLED', 'FAILED'].includes(job.status)) {
+            return job;
+        }
+        await new Promise(resolve => setTimeout(resolve, 2000));
+    }
 }
\ No newline at end of file
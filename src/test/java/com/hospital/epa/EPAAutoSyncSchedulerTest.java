@@ -0,0 +1,78 @@
+package com.hospital.epa;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+class EPAAutoSyncSchedulerTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private static final AtomicLong NOW = new AtomicLong();
+
+    @Spy
+    private EPAConfigService configService = new EPAConfigService();
+
+    @Mock
+    private EPASyncJobManager jobManager;
+
+    @InjectMocks
+    private EPAAutoSyncScheduler scheduler = new EPAAutoSyncScheduler(NOW::get);
+
+    @BeforeEach
+    void setUp() {
+        NOW.set(0);
+        MockitoAnnotations.openMocks(this);
+        configService.override(EPAConfigService.AUTO_SYNC, "true");
+        configService.override(EPAConfigService.SYNC_INTERVAL_MINUTES, "60");
+        when(jobManager.start(anyString(), anyBoolean(), anyLong())).thenReturn(new EPASyncJob("single", true));
+    }
+
+    @Test
+    @DisplayName("Nothing runs while epa_auto_sync is disabled")
+    void testDisabled() {
+        configService.override(EPAConfigService.AUTO_SYNC, "false");
+
+        scheduler.tick();
+
+        verify(jobManager, never()).start(anyString(), anyBoolean(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Delta sync runs once per interval and is spread over most of it")
+    void testRunsOncePerInterval() {
+        scheduler.tick();
+        NOW.addAndGet(30 * MINUTE);
+        scheduler.tick();
+        NOW.addAndGet(30 * MINUTE);
+        scheduler.tick();
+
+        // 80 % von 60 Minuten
+        verify(jobManager, times(2)).start("single", true, 2880L);
+    }
+
+    @Test
+    @DisplayName("No run is started while another job is still active")
+    void testNoOverlap() {
+        when(jobManager.getActiveJob()).thenReturn(new EPASyncJob("single"));
+
+        scheduler.tick();
+
+        verify(jobManager, never()).start(anyString(), anyBoolean(), anyLong());
+    }
+}
@@ -0,0 +1,106 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EPACircuitBreakerTest {
+
+    private AtomicLong now;
+    private EPACircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(1_000);
+        // Fenster 10, ab 50 % Fehlern bzw. 80 % langsamen Aufrufen (>= 100 ms) offen für 5 s
+        breaker = new EPACircuitBreaker(10, 50, 100, 80, 5_000, 2, now::get);
+    }
+
+    @Test
+    @DisplayName("Breaker opens once the failure rate reaches the threshold")
+    void testOpensOnFailureRate() {
+        call(false, 10);
+        call(false, 10);
+        call(true, 10);
+        call(true, 10);
+        assertEquals(EPACircuitBreaker.State.CLOSED, breaker.getState(), "below minimum number of calls");
+
+        call(true, 10);
+
+        assertEquals(EPACircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(1, breaker.getRejectedCalls());
+    }
+
+    @Test
+    @DisplayName("Breaker opens on slow calls even when they succeed")
+    void testOpensOnSlowCalls() {
+        for (int i = 0; i < 5; i++) {
+            call(false, 250);
+        }
+
+        assertEquals(EPACircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("Old results leave the sliding window")
+    void testSlidingWindow() {
+        call(true, 10);
+        call(true, 10);
+        for (int i = 0; i < 10; i++) {
+            call(false, 10);
+        }
+
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(EPACircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    @DisplayName("Successful probe calls close the breaker after the wait time")
+    void testHalfOpenCloses() {
+        openBreaker();
+        now.addAndGet(5_000);
+
+        assertEquals(EPACircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission(), "only two probe calls allowed");
+
+        breaker.onResult(false, 10);
+        breaker.onResult(false, 10);
+
+        assertEquals(EPACircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate());
+    }
+
+    @Test
+    @DisplayName("A failed probe call reopens the breaker")
+    void testHalfOpenReopens() {
+        openBreaker();
+        now.addAndGet(5_000);
+
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onResult(true, 10);
+
+        assertEquals(EPACircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.toJson().contains("\"timesOpened\": 2"));
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 5; i++) {
+            call(true, 10);
+        }
+        assertEquals(EPACircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void call(boolean failed, long durationMillis) {
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onResult(failed, durationMillis);
+    }
+}
@@ -0,0 +1,80 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.hospital.entity.EPAConfiguration;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.TypedQuery;
+
+class EPAConfigServiceTest {
+
+    @Mock
+    private EntityManager em;
+
+    @Mock
+    private TypedQuery<EPAConfiguration> query;
+
+    @InjectMocks
+    private EPAConfigService configService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(em.createNamedQuery("EPAConfiguration.findAll", EPAConfiguration.class)).thenReturn(query);
+    }
+
+    @Test
+    @DisplayName("Reload swaps in the current table contents")
+    void testReload() {
+        when(query.getResultList())
+                .thenReturn(List.of(new EPAConfiguration(EPAConfigService.RETRY_ATTEMPTS, " 3 ")))
+                .thenReturn(List.of(new EPAConfiguration(EPAConfigService.RETRY_ATTEMPTS, "5"),
+                        new EPAConfiguration(EPAConfigService.AUTO_SYNC, "true")));
+
+        assertTrue(configService.reload());
+        assertEquals(3, configService.getInt(EPAConfigService.RETRY_ATTEMPTS, 0));
+        assertFalse(configService.getBoolean(EPAConfigService.AUTO_SYNC, false));
+
+        assertTrue(configService.reload());
+        assertEquals(5, configService.getInt(EPAConfigService.RETRY_ATTEMPTS, 0));
+        assertTrue(configService.getBoolean(EPAConfigService.AUTO_SYNC, false));
+    }
+
+    @Test
+    @DisplayName("A failed reload keeps the previous snapshot")
+    void testFailedReloadKeepsValues() {
+        when(query.getResultList())
+                .thenReturn(List.of(new EPAConfiguration(EPAConfigService.TIMEOUT_SECONDS, "10")))
+                .thenThrow(new PersistenceException("DB down"));
+
+        configService.reload();
+
+        assertFalse(configService.reload());
+        assertEquals(10, configService.getInt(EPAConfigService.TIMEOUT_SECONDS, 30));
+    }
+
+    @Test
+    @DisplayName("The scheduled timer reloads the table")
+    void testScheduledReload() {
+        when(query.getResultList())
+                .thenReturn(List.of(new EPAConfiguration(EPAConfigService.SYNC_CONCURRENCY, "8")));
+
+        configService.scheduledReload();
+
+        assertEquals(8, configService.getInt(EPAConfigService.SYNC_CONCURRENCY, 0));
+    }
+}
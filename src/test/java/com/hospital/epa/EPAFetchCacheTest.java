@@ -0,0 +1,142 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EPAFetchCacheTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private AtomicLong now;
+    private AtomicInteger loads;
+    private EPAFetchCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong();
+        loads = new AtomicInteger();
+        // TTL 60 s, höchstens 2 Einträge
+        cache = new EPAFetchCache(60, 2, now::get);
+    }
+
+    private EPAFetchCache.Fetched load(EPAFetchCache.Fetched stale) {
+        loads.incrementAndGet();
+        return new EPAFetchCache.Fetched("{\"v\": " + loads.get() + "}", "\"etag-" + loads.get() + "\"");
+    }
+
+    @Test
+    @DisplayName("Fresh entries are served without loading")
+    void testHitWithinTtl() {
+        assertEquals("{\"v\": 1}", cache.get("EPA-1", this::load));
+        now.addAndGet(59 * SECOND);
+
+        assertEquals("{\"v\": 1}", cache.get("EPA-1", this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Expired entries are handed to the loader for ETag revalidation")
+    void testRevalidation() {
+        cache.get("EPA-1", this::load);
+        now.addAndGet(61 * SECOND);
+        List<String> etags = new ArrayList<>();
+
+        String body = cache.get("EPA-1", stale -> {
+            etags.add(stale.getEtag());
+            return stale; // 304 Not Modified
+        });
+
+        assertEquals("{\"v\": 1}", body);
+        assertEquals(List.of("\"etag-1\""), etags);
+        // Revalidierter Eintrag ist wieder für eine volle TTL frisch
+        now.addAndGet(30 * SECOND);
+        cache.get("EPA-1", this::load);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Invalidation forces a new load")
+    void testInvalidate() {
+        cache.get("EPA-1", this::load);
+
+        cache.invalidate("EPA-1");
+
+        assertEquals("{\"v\": 2}", cache.get("EPA-1", this::load));
+    }
+
+    @Test
+    @DisplayName("Missing records are not cached")
+    void testNotFound() {
+        assertNull(cache.get("EPA-404", stale -> null));
+
+        cache.get("EPA-404", this::load);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Least recently used entries are evicted beyond the size limit")
+    void testBounded() {
+        cache.get("EPA-1", this::load);
+        cache.get("EPA-2", this::load);
+        cache.get("EPA-1", this::load);
+        cache.get("EPA-3", this::load);
+
+        assertEquals(2, cache.size());
+        cache.get("EPA-2", this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    @DisplayName("Concurrent fetches for the same id share one load")
+    void testSingleFlight() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get("EPA-1", stale -> {
+                loading.countDown();
+                await(release);
+                return load(stale);
+            }));
+            loading.await();
+            List<Future<String>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                others.add(executor.submit(() -> cache.get("EPA-1", this::load)));
+            }
+            Thread.sleep(50);
+            release.countDown();
+
+            String body = first.get(5, TimeUnit.SECONDS);
+            for (Future<String> other : others) {
+                assertSame(body, other.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
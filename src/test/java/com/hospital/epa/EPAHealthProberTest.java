@@ -0,0 +1,75 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+class EPAHealthProberTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicLong NOW = new AtomicLong();
+
+    @Mock
+    private EPAIntegrationService epaService;
+
+    @InjectMocks
+    private EPAHealthProber prober = new EPAHealthProber(NOW::get);
+
+    @BeforeEach
+    void setUp() {
+        NOW.set(0);
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    @DisplayName("Status requests are answered from the last probe")
+    void testCachedStatus() {
+        when(epaService.testEPAConnection()).thenReturn(true);
+        prober.probe();
+        NOW.addAndGet(20 * SECOND);
+
+        EPAHealthProber.Status status = prober.getStatus(false);
+
+        assertTrue(status.isConnected());
+        assertEquals(20, prober.getAgeSeconds(status));
+        verify(epaService, times(1)).testEPAConnection();
+    }
+
+    @Test
+    @DisplayName("The first request probes when no result exists yet")
+    void testFirstRequestProbes() {
+        when(epaService.testEPAConnection()).thenReturn(false);
+
+        assertFalse(prober.getStatus(false).isConnected());
+        verify(epaService, times(1)).testEPAConnection();
+    }
+
+    @Test
+    @DisplayName("Forced probes are limited to one per interval")
+    void testForceIsThrottled() {
+        when(epaService.testEPAConnection()).thenReturn(true);
+        EPAHealthProber.Status first = prober.getStatus(false);
+
+        assertSame(first, prober.getStatus(true));
+        NOW.addAndGet(6 * SECOND);
+        when(epaService.testEPAConnection()).thenReturn(false);
+
+        assertFalse(prober.getStatus(true).isConnected());
+        verify(epaService, times(2)).testEPAConnection();
+    }
+}
@@ -0,0 +1,113 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+class EPAHttp2TransportTest {
+
+    private HttpServer server;
+    private EPAHttp2Transport transport;
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private final AtomicReference<String> receivedAuth = new AtomicReference<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Der JDK-Server spricht nur HTTP/1.1: prüft zugleich den Rückfall des Clients
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/Patient", exchange -> {
+            receivedBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            receivedAuth.set(exchange.getRequestHeaders().getFirst("Authorization"));
+            byte[] response = "{\"id\": \"EPA-1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.sendResponseHeaders(201, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        transport = new EPAHttp2Transport();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        transport.close();
+        server.stop(0);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    @Test
+    @DisplayName("Requests carry body and headers, responses expose status, body and headers")
+    void testRoundTrip() throws Exception {
+        EPAHttpResponse response = transport.send("POST", uri("/Patient"),
+                Map.of("Authorization", "Bearer test", "Content-Type", "application/fhir+json",
+                        "Content-Length", "999"),
+                "{\"resourceType\": \"Patient\"}", Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(201, response.getStatus());
+        assertEquals("{\"id\": \"EPA-1\"}", response.getBody());
+        assertEquals("\"v1\"", response.getHeader("etag"));
+        assertEquals("{\"resourceType\": \"Patient\"}", receivedBody.get());
+        assertEquals("Bearer test", receivedAuth.get());
+    }
+
+    @Test
+    @DisplayName("Requests exceeding the timeout fail with HttpTimeoutException")
+    void testTimeout() {
+        var future = transport.send("GET", uri("/slow"), Map.of(), null, Duration.ofMillis(200));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertEquals(HttpTimeoutException.class, error.getCause().getClass());
+    }
+
+    @Test
+    @DisplayName("Cancelling the returned future cancels the underlying exchange")
+    void testCancelForwardsToExchange() {
+        HttpClient client = mock(HttpClient.class);
+        CompletableFuture<HttpResponse<String>> exchange = new CompletableFuture<>();
+        doReturn(exchange).when(client).sendAsync(any(), any());
+        EPAHttp2Transport cancellable = new EPAHttp2Transport(client);
+
+        var future = cancellable.send("GET", uri("/slow"), Map.of(), null, Duration.ofSeconds(5));
+        future.cancel(true);
+
+        assertTrue(exchange.isCancelled());
+    }
+}
@@ -0,0 +1,143 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.hospital.entity.Patient;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+class EPAImportRepositoryTest {
+
+    @Mock
+    private EntityManager em;
+
+    @Mock
+    private TypedQuery<Patient> byEpaIds;
+
+    @Mock
+    private TypedQuery<Patient> byInsuranceNumbers;
+
+    @Spy
+    private FHIRConverter fhirConverter = new FHIRConverter();
+
+    @InjectMocks
+    private EPAImportRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(em.createNamedQuery("Patient.findByEpaIds", Patient.class)).thenReturn(byEpaIds);
+        when(em.createNamedQuery("Patient.findByInsuranceNumbers", Patient.class)).thenReturn(byInsuranceNumbers);
+        when(byEpaIds.setParameter(anyString(), any())).thenReturn(byEpaIds);
+        when(byInsuranceNumbers.setParameter(anyString(), any())).thenReturn(byInsuranceNumbers);
+    }
+
+    @Test
+    @DisplayName("Should update patients matched by EPA id or insurance number and create the rest")
+    void testUpsert() {
+        Patient linked = patient(1L, "INS-1", "E1");
+        Patient unlinked = patient(2L, "INS-2", null);
+        unlinked.setStatus("discharged");
+        when(byEpaIds.getResultList()).thenReturn(List.of(linked));
+        when(byInsuranceNumbers.getResultList()).thenReturn(List.of(linked, unlinked));
+
+        Map<String, Patient> imported = new LinkedHashMap<>();
+        imported.put("E1", imported("INS-1", "Neumann"));
+        imported.put("E2", imported("INS-2", "Zweitname"));
+        Patient created = imported("INS-3", "Neu");
+        imported.put("E3", created);
+
+        EPAImportResult result = repository.upsert(imported);
+
+        assertEquals(2, result.getUpdatedCount());
+        assertEquals(1, result.getCreatedCount());
+        assertEquals("Neumann", linked.getLastName());
+        assertEquals("E2", unlinked.getEpaId());
+        assertEquals("Zweitname", unlinked.getLastName());
+        assertEquals("discharged", unlinked.getStatus());
+        assertEquals("E3", created.getEpaId());
+        assertEquals("synced", created.getEpaSyncStatus());
+        assertEquals(FHIRConverter.payloadHash(fhirConverter.patientToFHIR(created)), created.getEpaPayloadHash());
+        verify(em).persist(created);
+        verify(em).flush();
+    }
+
+    @Test
+    @DisplayName("Should reject records whose insurance number belongs to another EPA record")
+    void testConflicts() {
+        Patient linked = patient(1L, "INS-1", "E1");
+        Patient other = patient(2L, "INS-2", "E9");
+        when(byEpaIds.getResultList()).thenReturn(List.of(linked));
+        when(byInsuranceNumbers.getResultList()).thenReturn(List.of(other));
+
+        Map<String, Patient> imported = new LinkedHashMap<>();
+        imported.put("E1", imported("INS-2", "Neumann"));
+        imported.put("E2", imported("INS-2", "Zweitname"));
+
+        EPAImportResult result = repository.upsert(imported);
+
+        assertEquals(2, result.getFailedCount());
+        assertEquals(0, result.getUpdatedCount() + result.getCreatedCount());
+        assertEquals("INS-1", linked.getInsuranceNumber());
+        assertTrue(result.getErrors().get(1).contains("bereits mit EPA-ID E9 verknüpft"));
+        verify(em, never()).persist(any());
+    }
+
+    @Test
+    @DisplayName("Should create a patient only once when a batch repeats an insurance number")
+    void testDuplicateInsuranceNumberInBatch() {
+        when(byEpaIds.getResultList()).thenReturn(List.of());
+        when(byInsuranceNumbers.getResultList()).thenReturn(List.of());
+
+        Map<String, Patient> imported = new LinkedHashMap<>();
+        imported.put("E1", imported("INS-1", "Erster"));
+        Patient duplicate = imported("INS-1", "Zweiter");
+        imported.put("E2", duplicate);
+
+        EPAImportResult result = repository.upsert(imported);
+
+        assertEquals(1, result.getCreatedCount());
+        assertEquals(1, result.getFailedCount());
+        assertNull(duplicate.getEpaId());
+        verify(em, never()).persist(eq(duplicate));
+    }
+
+    private static Patient patient(Long id, String insuranceNumber, String epaId) {
+        Patient patient = imported(insuranceNumber, "Bestand");
+        patient.setId(id);
+        patient.setEpaId(epaId);
+        return patient;
+    }
+
+    private static Patient imported(String insuranceNumber, String lastName) {
+        Patient patient = new Patient();
+        patient.setFirstName("Max");
+        patient.setLastName(lastName);
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient.setGender("Männlich");
+        patient.setInsuranceNumber(insuranceNumber);
+        return patient;
+    }
+}
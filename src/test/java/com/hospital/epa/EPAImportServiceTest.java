@@ -0,0 +1,163 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.hospital.entity.Patient;
+
+class EPAImportServiceTest {
+
+    @Mock
+    private EPAIntegrationService epaService;
+
+    @Mock
+    private EPAImportRepository repository;
+
+    @Spy
+    private FHIRConverter fhirConverter = new FHIRConverter();
+
+    @Spy
+    private EPAConfigService configService = new EPAConfigService();
+
+    @InjectMocks
+    private EPAImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(repository.upsert(anyMap())).thenAnswer(invocation -> {
+            EPAImportResult result = new EPAImportResult();
+            Map<?, ?> patients = invocation.getArgument(0);
+            patients.forEach((epaId, patient) -> result.recordCreated());
+            return result;
+        });
+    }
+
+    @Test
+    @DisplayName("Should fetch concurrently without exceeding epa_sync_concurrency")
+    void testBoundedConcurrentFetch() {
+        configService.override(EPAConfigService.SYNC_CONCURRENCY, "3");
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(epaService.getPatientFromEPA(any())).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            return patientJson(invocation.getArgument(0), "INS-" + invocation.getArgument(0));
+        });
+
+        EPAImportResult result = importService.importByEpaIds(
+                List.of("E1", "E2", "E3", "E4", "E5", "E6", "E7", "E8", "E1", " "));
+
+        assertEquals(8, result.getCreatedCount());
+        assertTrue(maxActive.get() > 1, "Abrufe sollten parallel laufen");
+        assertTrue(maxActive.get() <= 3, "höchstens 3 gleichzeitige Abrufe, waren " + maxActive.get());
+    }
+
+    @Test
+    @DisplayName("Should count unknown ids and store converted patients in input order")
+    void testNotFoundAndConversion() {
+        when(epaService.getPatientFromEPA("E1")).thenReturn(patientJson("E1", "INS-1"));
+        when(epaService.getPatientFromEPA("E2")).thenReturn(null);
+        when(epaService.getPatientFromEPA("E3")).thenReturn("{\"resourceType\": \"Patient\", \"id\": \"E3\"}");
+        when(epaService.getPatientFromEPA("E4")).thenReturn("kein JSON");
+
+        EPAImportResult result = importService.importByEpaIds(List.of("E1", "E2", "E3", "E4"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Patient>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(repository).upsert(batch.capture());
+        Patient imported = batch.getValue().get("E1");
+        assertEquals(List.of("E1"), List.copyOf(batch.getValue().keySet()));
+        assertEquals("Mustermann", imported.getLastName());
+        assertEquals("INS-1", imported.getInsuranceNumber());
+        assertEquals(1, result.getCreatedCount());
+        assertEquals(1, result.getNotFoundCount());
+        assertEquals(2, result.getFailedCount());
+        assertTrue(result.toJson().contains("E3: Pflichtfeld fehlt: name"));
+    }
+
+    @Test
+    @DisplayName("Should report every patient of a batch whose transaction failed")
+    void testFailedBatch() {
+        when(epaService.getPatientFromEPA(any())).thenAnswer(
+                invocation -> patientJson(invocation.getArgument(0), "INS-" + invocation.getArgument(0)));
+        when(repository.upsert(anyMap())).thenThrow(new RuntimeException("duplicate key"));
+
+        EPAImportResult result = importService.importByEpaIds(List.of("E1", "E2"));
+
+        assertEquals(0, result.getCreatedCount());
+        assertEquals(2, result.getFailedCount());
+        assertTrue(result.getErrors().get(0).contains("duplicate key"));
+    }
+
+    @Test
+    @DisplayName("Should import Patient resources from a search Bundle without calling the EPA")
+    void testImportFromBundle() {
+        String bundle = "{\"resourceType\": \"Bundle\", \"type\": \"searchset\", \"entry\": ["
+                + "{\"resource\": " + patientJson("E1", "INS-1") + "},"
+                + "{\"resource\": {\"resourceType\": \"Organization\", \"id\": \"O1\"}},"
+                + "{\"resource\": " + patientJson(null, "INS-2") + "}]}";
+
+        EPAImportResult result = importService.importFromFhir(bundle);
+
+        assertEquals(1, result.getCreatedCount());
+        assertEquals(1, result.getFailedCount());
+        verify(epaService, never()).getPatientFromEPA(any());
+    }
+
+    @Test
+    @DisplayName("Should parse NDJSON from $export and reject malformed content")
+    void testParseNdjson() {
+        String ndjson = patientJson("E1", "INS-1") + "\n\n" + patientJson("E2", "INS-2") + "\n";
+
+        List<?> resources = EPAImportService.parseResources(ndjson);
+
+        assertEquals(2, resources.size());
+        assertEquals(1, EPAImportService.parseResources(patientJson("E1", "INS-1")).size());
+        assertTrue(EPAImportService.parseResources("  ").isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> EPAImportService.parseResources(patientJson("E1", "INS-1") + "\n{kaputt"));
+    }
+
+    @Test
+    @DisplayName("Should reject imports above the per-request limit before calling the EPA")
+    void testImportLimit() {
+        List<String> epaIds = IntStream.rangeClosed(1, 1001).mapToObj(i -> "E" + i).toList();
+        String ndjson = epaIds.stream().map(id -> patientJson(id, "INS-" + id)).collect(Collectors.joining("\n"));
+
+        assertThrows(IllegalArgumentException.class, () -> importService.importByEpaIds(epaIds));
+        assertThrows(IllegalArgumentException.class, () -> importService.importFromFhir(ndjson));
+        verify(epaService, never()).getPatientFromEPA(any());
+        verify(repository, never()).upsert(anyMap());
+    }
+
+    private static String patientJson(String epaId, String insuranceNumber) {
+        return "{\"resourceType\": \"Patient\", "
+                + (epaId != null ? "\"id\": \"" + epaId + "\", " : "")
+                + "\"identifier\": [{\"value\": \"" + insuranceNumber + "\"}], "
+                + "\"name\": [{\"family\": \"Mustermann\", \"given\": [\"Max\"]}], "
+                + "\"gender\": \"male\", \"birthDate\": \"1990-01-01\", \"active\": true}";
+    }
+}
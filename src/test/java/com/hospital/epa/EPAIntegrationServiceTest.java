@@ -2,27 +2,45 @@ package com.hospital.epa;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import com.hospital.entity.Patient;
 
+import jakarta.ejb.SessionContext;
+
 /**
  * Unit tests for EPA Integration Service
  */
@@ -31,6 +49,36 @@ class EPAIntegrationServiceTest {
     @Mock
     private FHIRConverter fhirConverter;
 
+    @Spy
+    private EPAMetrics metrics = new EPAMetrics();
+
+    // Kein Spy: der Transport muss dieselbe Instanz halten, die setUp initialisiert
+    private final EPAClientProvider clientProvider = new EPAClientProvider();
+
+    @Spy
+    private EPAJaxRsTransport jaxRsTransport = new EPAJaxRsTransport(clientProvider);
+
+    @Spy
+    private EPAHttp2Transport http2Transport = new EPAHttp2Transport();
+
+    @Spy
+    private EPACircuitBreaker circuitBreaker = new EPACircuitBreaker();
+
+    @Spy
+    private EPAConfigService configService = new EPAConfigService();
+
+    @Spy
+    private EPARateLimiter rateLimiter = new EPARateLimiter();
+
+    @Spy
+    private EPASyncLogWriter syncLog = new EPASyncLogWriter();
+
+    @Spy
+    private EPAFetchCache fetchCache = new EPAFetchCache();
+
+    @Mock
+    private SessionContext sessionContext;
+
     @InjectMocks
     private EPAIntegrationService epaService;
 
@@ -39,6 +87,10 @@ class EPAIntegrationServiceTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        clientProvider.init();
+        // EPA ist im Test nicht erreichbar; Wiederholungen nur dort, wo sie geprüft werden
+        configService.override(EPAConfigService.RETRY_ATTEMPTS, "0");
+        when(sessionContext.getBusinessObject(EPAIntegrationService.class)).thenReturn(epaService);
 
         testPatient = new Patient();
         testPatient.setId(1L);
@@ -176,6 +228,229 @@ class EPAIntegrationServiceTest {
         assertTrue(result.getFailedCount() >= 0);
     }
 
+    @Test
+    @DisplayName("Should reuse the shared client and release every request")
+    void testSharedClientReleasesRequests() {
+        // Arrange
+        when(fhirConverter.patientToFHIR(any(Patient.class)))
+                .thenReturn("{\"resourceType\":\"Patient\"}");
+        var client = clientProvider.getClient();
+
+        // Act
+        epaService.sendPatientToEPA(testPatient);
+        epaService.testEPAConnection();
+
+        // Assert
+        assertSame(client, clientProvider.getClient());
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, metrics.getRequestCount("create"));
+        assertEquals(1, metrics.getRequestCount("health"));
+    }
+
+    @Test
+    @DisplayName("Should report every patient when bundle upload fails")
+    void testBundleSyncFailureMapsAllPatients() {
+        // Arrange
+        List<Patient> patients = Arrays.asList(
+                createTestPatient(1L, "Patient", "One"),
+                createTestPatient(2L, "Patient", "Two"));
+        when(fhirConverter.patientToFHIR(any(Patient.class))).thenReturn("{\"resourceType\":\"Patient\"}");
+        when(fhirConverter.createTransactionBundle(any(), any()))
+                .thenReturn("{\"resourceType\":\"Bundle\"}");
+        List<Patient> reported = new java.util.ArrayList<>();
+
+        // Act - EPA nicht erreichbar
+        var result = epaService.syncAllPatientsInBundles(patients, (patient, response) -> reported.add(patient));
+
+        // Assert
+        assertEquals(2, result.getFailedCount());
+        assertEquals(patients, reported);
+        assertEquals(1, metrics.getRequestCount("bundle"));
+    }
+
+    @Test
+    @DisplayName("Should fail fast without EPA call while circuit breaker is open")
+    void testOpenCircuitFailsFast() {
+        // Arrange
+        when(fhirConverter.patientToFHIR(any(Patient.class))).thenReturn("{\"resourceType\":\"Patient\"}");
+        for (int i = 0; i < 20; i++) {
+            circuitBreaker.tryAcquirePermission();
+            circuitBreaker.onResult(true, 10);
+        }
+
+        // Act
+        EPAResponse response = epaService.sendPatientToEPA(testPatient);
+
+        // Assert
+        assertEquals(EPACircuitBreaker.State.OPEN, epaService.getCircuitState());
+        assertTrue(response.getMessage().contains("Circuit Breaker"));
+        assertEquals(0, metrics.getRequestCount("create"));
+        assertEquals(1, metrics.getRejectedCount("create"));
+    }
+
+    @Test
+    @DisplayName("Should retry connection errors up to epa_retry_attempts")
+    void testRetriesConnectionErrors() {
+        // Arrange
+        configService.override(EPAConfigService.RETRY_ATTEMPTS, "2");
+
+        // Act - EPA-Host nicht auflösbar: Verbindungsfehler
+        boolean connected = epaService.testEPAConnection();
+
+        // Assert
+        assertFalse(connected);
+        assertEquals(1, metrics.getRequestCount("health"));
+        assertEquals(2, metrics.getRetryCount("health"));
+        assertEquals(1, metrics.getFailureCount("health"));
+        verify(rateLimiter, times(3)).acquire();
+        assertEquals(1, syncLog.getQueued(), "one audit entry per logical call");
+    }
+
+    @Test
+    @DisplayName("Should skip unchanged patients without calling the EPA")
+    void testUnchangedPayloadIsSkipped() {
+        // Arrange
+        String fhir = "{\"resourceType\":\"Patient\"}";
+        when(fhirConverter.patientToFHIR(any(Patient.class))).thenReturn(fhir);
+        Patient unchanged = createTestPatient(1L, "Patient", "One");
+        unchanged.setEpaId("EPA-1");
+        unchanged.setEpaPayloadHash(FHIRConverter.payloadHash(fhir));
+        Patient changed = createTestPatient(2L, "Patient", "Two");
+        changed.setEpaId("EPA-2");
+        changed.setEpaPayloadHash(FHIRConverter.payloadHash("{\"resourceType\":\"Patient\",\"old\":true}"));
+
+        // Act
+        var result = epaService.syncAllPatientsToEPA(Arrays.asList(unchanged, changed));
+
+        // Assert
+        assertEquals(1, result.getSkippedCount());
+        assertEquals(1, result.getFailedCount());
+        assertEquals(0, metrics.getRequestCount("create"));
+        assertEquals(1, metrics.getRequestCount("update"));
+    }
+
+    @Test
+    @DisplayName("Should send concurrent uploads through the business proxy, not this instance")
+    void testSyncAllUsesBusinessProxy() {
+        // Arrange
+        EPAIntegrationService proxy = mock(EPAIntegrationService.class);
+        when(sessionContext.getBusinessObject(EPAIntegrationService.class)).thenReturn(proxy);
+        when(proxy.syncPatient(any(Patient.class), any())).thenReturn(new EPAResponse(true, "EPA-1", "ok"));
+
+        // Act
+        var result = epaService.syncAllPatientsToEPA(
+                Arrays.asList(testPatient, createTestPatient(2L, "Anna", "Schmidt")));
+
+        // Assert
+        assertEquals(2, result.getSuccessCount());
+        verify(proxy, times(2)).syncPatient(any(Patient.class), any());
+        assertEquals(0, metrics.getRequestCount("create"));
+    }
+
+    @Test
+    @DisplayName("Should update patients with EPA id and create others only if the identifier is unknown")
+    void testUpsertRouting() throws Exception {
+        // Arrange
+        FHIRConverter converter = new FHIRConverter();
+        when(fhirConverter.patientToFHIR(any(Patient.class)))
+                .thenAnswer(invocation -> converter.patientToFHIR(invocation.getArgument(0)));
+        try (EPASimulator simulator = EPASimulator.start(0)) {
+            epaService.useTestEndpoint(simulator.getBaseUrl().toString(), "test-key");
+
+            // Act - neu anlegen, EPA-ID aus dem Location-Header
+            EPAResponse created = epaService.sendPatientToEPA(testPatient);
+            testPatient.setEpaId(created.getEpaId());
+            testPatient.setPhone("030-123");
+            EPAResponse updated = epaService.sendPatientToEPA(testPatient);
+
+            // Gleiche Versicherungsnummer ohne EPA-ID (z.B. nach Restore): kein Duplikat
+            Patient restored = createTestPatient(1L, "Max", "Mustermann");
+            restored.setInsuranceNumber(testPatient.getInsuranceNumber());
+            EPAResponse matched = epaService.syncPatient(restored);
+
+            // In der EPA gelöschte EPA-ID: bedingt neu anlegen
+            Patient stale = createTestPatient(2L, "Anna", "Schmidt");
+            stale.setEpaId("DELETED-1");
+            EPAResponse recreated = epaService.sendPatientToEPA(stale);
+
+            // Assert
+            assertEquals("SIM-1", created.getEpaId());
+            assertTrue(updated.isSuccess());
+            assertEquals("SIM-1", updated.getEpaId());
+            assertEquals("SIM-1", matched.getEpaId());
+            assertTrue(recreated.isSuccess());
+            assertEquals("SIM-2", recreated.getEpaId());
+            assertEquals(2, simulator.getPatientCount());
+            assertEquals(2, metrics.getRequestCount("update"));
+            assertEquals(3, metrics.getRequestCount("create"));
+            assertFalse(epaService.updatePatientInEPA(stale, "DELETED-1").isSuccess());
+            assertEquals(3, metrics.getRequestCount("update"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should abort hanging EPA calls after the operation timeout")
+    void testHangingCallTimesOut() throws Exception {
+        // Arrange - Server nimmt Verbindungen an, antwortet aber nie
+        try (ServerSocket hanging = new ServerSocket(0)) {
+            epaService.useTestEndpoint("http://127.0.0.1:" + hanging.getLocalPort(), "test-key");
+            configService.override(EPAConfigService.TIMEOUT_SECONDS + "_health", "1");
+            long start = System.nanoTime();
+
+            // Act
+            boolean connected = epaService.testEPAConnection();
+
+            // Assert
+            assertFalse(connected);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10), "call must not hang");
+            assertEquals(1, metrics.getTimeoutCount("health"));
+            assertEquals(1000, epaService.timeoutMillis("health"));
+            assertEquals(120_000, epaService.timeoutMillis("bundle"));
+        }
+    }
+
+    @Test
+    @DisplayName("Should run JAX-RS requests on the calling thread with the operation timeout")
+    void testJaxRsTransportIsSynchronous() throws Exception {
+        try (EPASimulator simulator = EPASimulator.start(0)) {
+            // Act
+            var future = jaxRsTransport.send("GET", URI.create(simulator.getBaseUrl() + "/health"),
+                    Map.of(), null, Duration.ofSeconds(5));
+
+            // Assert - kein zweiter Thread, der Aufrufer erhält die fertige Antwort
+            assertTrue(future.isDone());
+            assertEquals(200, future.get().getStatus());
+            assertSame(clientProvider.getClient(Duration.ofSeconds(5)),
+                    clientProvider.getClient(Duration.ofMillis(5000)));
+        }
+    }
+
+    @Test
+    @DisplayName("Should fail the upload when the EPA response carries no valid EPA id")
+    void testCreateWithoutEpaId() {
+        // Arrange - Antwort ohne Location und ohne Patient-Resource, z.B. eine HTML-Seite
+        when(fhirConverter.patientToFHIR(any(Patient.class))).thenReturn("{\"resourceType\":\"Patient\"}");
+        doReturn(CompletableFuture.completedFuture(new EPAHttpResponse(201,
+                "<html><body>" + "Created ".repeat(50) + "</body></html>", Map.of())))
+                .doReturn(CompletableFuture.completedFuture(new EPAHttpResponse(201, " EPA-4711 ", Map.of())))
+                .when(jaxRsTransport).send(eq("POST"), any(URI.class), anyMap(), anyString(), any(Duration.class));
+
+        // Act
+        EPAResponse withoutId = epaService.sendPatientToEPA(testPatient);
+        EPAResponse plainId = epaService.sendPatientToEPA(testPatient);
+
+        // Assert
+        assertFalse(withoutId.isSuccess());
+        assertNull(withoutId.getEpaId());
+        assertTrue(plainId.isSuccess());
+        assertEquals("EPA-4711", plainId.getEpaId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        clientProvider.close();
+    }
+
     // Helper method
     private Patient createTestPatient(Long id, String firstName, String lastName) {
         Patient patient = new Patient();
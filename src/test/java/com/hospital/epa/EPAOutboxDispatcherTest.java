@@ -0,0 +1,123 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.hospital.entity.EPAOutboxEntry;
+import com.hospital.entity.Patient;
+
+class EPAOutboxDispatcherTest {
+
+    @Mock
+    private EPAOutbox outbox;
+
+    @Mock
+    private EPAIntegrationService epaService;
+
+    @Mock
+    private EPASyncRepository syncRepository;
+
+    @InjectMocks
+    private EPAOutboxDispatcher dispatcher;
+
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        patient = new Patient();
+        patient.setId(5L);
+        patient.setEpaEnabled(true);
+        when(syncRepository.findPatient(5L)).thenReturn(patient);
+    }
+
+    @Test
+    @DisplayName("New patients are created in the EPA and the entry is removed")
+    void testCreateAndComplete() {
+        EPAOutboxEntry entry = entry(1);
+        EPAResponse ok = new EPAResponse(true, "EPA-5", "ok");
+        when(epaService.syncPatient(patient)).thenReturn(ok);
+
+        dispatcher.process(entry);
+
+        verify(syncRepository).recordResult(patient, ok);
+        verify(outbox).complete(entry);
+    }
+
+    @Test
+    @DisplayName("Unchanged patients complete the entry without a new upload")
+    void testUnchangedPatientCompleted() {
+        patient.setEpaId("EPA-5");
+        EPAOutboxEntry entry = entry(1);
+        EPAResponse skipped = EPAResponse.skipped("EPA-5", "abc");
+        when(epaService.syncPatient(patient)).thenReturn(skipped);
+
+        dispatcher.process(entry);
+
+        verify(syncRepository).recordResult(patient, skipped);
+        verify(outbox).complete(entry);
+    }
+
+    @Test
+    @DisplayName("Failures are rescheduled with growing delay")
+    void testFailureRescheduled() {
+        EPAOutboxEntry entry = entry(3);
+        when(epaService.syncPatient(patient)).thenReturn(new EPAResponse(false, null, "EPA down"));
+
+        dispatcher.process(entry);
+
+        verify(outbox).reschedule(eq(entry), eq("EPA down"), eq(120L), anyInt());
+        verify(outbox, never()).complete(any());
+        assertEquals(30, EPAOutboxDispatcher.retryDelaySeconds(1));
+        assertEquals(3600, EPAOutboxDispatcher.retryDelaySeconds(20));
+    }
+
+    @Test
+    @DisplayName("Entries for withdrawn consent are dropped without EPA call")
+    void testConsentWithdrawn() {
+        patient.setEpaEnabled(false);
+        EPAOutboxEntry entry = entry(1);
+
+        dispatcher.process(entry);
+
+        verify(outbox).complete(entry);
+        verify(epaService, never()).syncPatient(any());
+    }
+
+    @Test
+    @DisplayName("Worker claims batches until the outbox is empty")
+    void testDrain() {
+        when(outbox.claim(anyString(), anyInt(), anyInt()))
+                .thenReturn(List.of(entry(1), entry(1)))
+                .thenReturn(List.of());
+        when(epaService.syncPatient(patient)).thenReturn(new EPAResponse(true, "EPA-5", "ok"));
+
+        assertEquals(2, dispatcher.drain("worker-0"));
+        verify(outbox, never()).reschedule(any(), anyString(), anyLong(), anyInt());
+    }
+
+    private static EPAOutboxEntry entry(int attempts) {
+        EPAOutboxEntry entry = new EPAOutboxEntry();
+        entry.setId(100L + attempts);
+        entry.setPatientId(5L);
+        entry.setAttempts(attempts);
+        entry.setLockedBy("worker-0");
+        return entry;
+    }
+}
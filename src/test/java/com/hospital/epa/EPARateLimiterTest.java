@@ -0,0 +1,78 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EPARateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private AtomicLong now;
+    private EPARateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong();
+        // 10 req/s, Burst 5
+        limiter = new EPARateLimiter(10, 5, now::get);
+    }
+
+    @Test
+    @DisplayName("Burst is served immediately, further requests are spaced by the rate")
+    void testBurstThenRate() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.reserve());
+        }
+
+        assertEquals(SECOND / 10, limiter.reserve());
+        assertEquals(2 * SECOND / 10, limiter.reserve());
+    }
+
+    @Test
+    @DisplayName("Tokens refill over time up to the burst size")
+    void testRefill() {
+        for (int i = 0; i < 5; i++) {
+            limiter.reserve();
+        }
+        now.addAndGet(10 * SECOND);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.reserve());
+        }
+        assertTrue(limiter.reserve() > 0);
+    }
+
+    @Test
+    @DisplayName("A 429 halves the rate, successes restore it gradually")
+    void testAdaptiveRate() {
+        limiter.onThrottled();
+        assertEquals(5.0, limiter.getRate(), 0.001);
+        assertEquals(SECOND / 5, limiter.reserve());
+
+        limiter.onSuccess();
+        assertEquals(5.0, limiter.getRate(), 0.001, "no increase within the first second");
+
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(SECOND);
+            limiter.onSuccess();
+        }
+        assertEquals(10.0, limiter.getRate(), 0.001);
+        assertTrue(limiter.toJson().contains("\"throttled\": 1"));
+    }
+
+    @Test
+    @DisplayName("Rate never drops below the minimum")
+    void testMinimumRate() {
+        for (int i = 0; i < 20; i++) {
+            limiter.onThrottled();
+        }
+        assertEquals(0.5, limiter.getRate(), 0.001);
+    }
+}
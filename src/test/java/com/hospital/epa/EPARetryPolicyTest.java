@@ -0,0 +1,81 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.ProcessingException;
+
+class EPARetryPolicyTest {
+
+    private final EPARetryPolicy policy = new EPARetryPolicy(3, 100, 1_000);
+
+    @Test
+    @DisplayName("Only 429 and 503 are always retryable, 502/504 only for idempotent requests")
+    void testRetryableStatus() {
+        assertTrue(policy.isRetryableStatus(429, false));
+        assertTrue(policy.isRetryableStatus(503, false));
+        assertFalse(policy.isRetryableStatus(502, false));
+        assertFalse(policy.isRetryableStatus(504, false));
+        assertTrue(policy.isRetryableStatus(502, true));
+        assertTrue(policy.isRetryableStatus(504, true));
+        assertFalse(policy.isRetryableStatus(400, true));
+        assertFalse(policy.isRetryableStatus(409, true));
+        assertFalse(policy.isRetryableStatus(500, true));
+    }
+
+    @Test
+    @DisplayName("Connect errors are retryable, read timeouts are not")
+    void testRetryableExceptions() {
+        assertTrue(policy.isRetryable(new ProcessingException(new ConnectException("refused"))));
+        assertFalse(policy.isRetryable(new ProcessingException(new SocketTimeoutException("Read timed out"))));
+        assertFalse(policy.isRetryable(new IllegalStateException("boom")));
+    }
+
+    @Test
+    @DisplayName("Backoff grows exponentially with jitter and is capped")
+    void testBackoff() {
+        for (int i = 0; i < 50; i++) {
+            long first = policy.delayMillis(0, null);
+            long third = policy.delayMillis(2, null);
+            long capped = policy.delayMillis(10, null);
+            assertTrue(first >= 50 && first <= 100, "first " + first);
+            assertTrue(third >= 200 && third <= 400, "third " + third);
+            assertTrue(capped >= 500 && capped <= 1_000, "capped " + capped);
+        }
+    }
+
+    @Test
+    @DisplayName("Retry-After in seconds or as HTTP date takes precedence")
+    void testRetryAfter() {
+        assertEquals(2_000, policy.delayMillis(0, "2"));
+        assertEquals(60_000, policy.delayMillis(0, "3600"));
+
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(5));
+        long delay = policy.delayMillis(0, date);
+        assertTrue(delay > 3_000 && delay <= 5_000, "delay " + delay);
+
+        assertNull(EPARetryPolicy.parseRetryAfter("soon"));
+        assertNull(EPARetryPolicy.parseRetryAfter(null));
+    }
+
+    @Test
+    @DisplayName("Huge Retry-After values are capped instead of overflowing")
+    void testHugeRetryAfter() {
+        assertEquals(60_000, policy.delayMillis(0, "9223372036854775"));
+        assertEquals(60_000, policy.delayMillis(0, String.valueOf(Long.MAX_VALUE)));
+        assertEquals(60_000, policy.delayMillis(0, "99999999999999999999999"));
+        assertEquals(0, policy.delayMillis(0, "-5"));
+    }
+}
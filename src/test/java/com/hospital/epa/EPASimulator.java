@@ -0,0 +1,356 @@
+package com.hospital.epa;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonValue;
+
+/**
+ * Lokaler FHIR-EPA-Simulator für Last- und Fehlertests (JDK-HttpServer, ohne Container).
+ * Unterstützt /Patient (auch bedingt per If-None-Exist auf den Identifier), /Patient/{id},
+ * /health und batch/transaction-Bundles am Basis-Pfad. Latenzverteilung, Fehlerquote, 429-Drosselung und langsame Antworten
+ * sind einstellbar, auch während eines Laufs.
+ *
+ * Auch eigenständig startbar, siehe README (EPA Simulator and Load Test).
+ */
+public class EPASimulator implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASimulator.class.getName());
+
+    static final String BASE_PATH = "/fhir";
+
+    private static final class Stored {
+        private final String body;
+        private final long version;
+
+        private Stored(String body, long version) {
+            this.body = body;
+            this.version = version;
+        }
+
+        private String etag() {
+            return "W/\"" + version + "\"";
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final Map<String, Stored> patients = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    // "system|value" des ersten Identifiers → ID, für bedingtes Anlegen
+    private final Map<String, String> identifiers = new ConcurrentHashMap<>();
+
+    private volatile LongSupplier latency = () -> 0;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds;
+    private volatile double slowRate;
+    private volatile long slowMillis;
+
+    private final LongAdder requests = new LongAdder();
+    private final Map<Integer, LongAdder> statusCounts = new ConcurrentHashMap<>();
+
+    private EPASimulator(HttpServer server) {
+        this.server = server;
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(BASE_PATH, this::handle);
+    }
+
+    /**
+     * Startet den Simulator auf 127.0.0.1; Port 0 wählt einen freien Port
+     */
+    public static EPASimulator start(int port) throws IOException {
+        EPASimulator simulator = new EPASimulator(
+                HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024));
+        simulator.server.start();
+        LOGGER.info("EPA-Simulator gestartet: " + simulator.getBaseUrl());
+        return simulator;
+    }
+
+    /**
+     * Basis-URL für epa_base_url
+     */
+    public URI getBaseUrl() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + BASE_PATH);
+    }
+
+    /**
+     * Latenz pro Request in Millisekunden, z.B. {@link #uniform(long, long)}
+     */
+    public EPASimulator latency(LongSupplier millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    /**
+     * Anteil der Requests (0..1), die mit status (z.B. 500 oder 503) fehlschlagen
+     */
+    public EPASimulator errors(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Anteil der Requests, die mit 429 und Retry-After gedrosselt werden
+     */
+    public EPASimulator throttling(double rate, int retryAfterSeconds) {
+        this.throttleRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Anteil der Requests, die zusätzlich millis verzögert werden (hängende EPA)
+     */
+    public EPASimulator slowResponses(double rate, long millis) {
+        this.slowRate = rate;
+        this.slowMillis = millis;
+        return this;
+    }
+
+    public static LongSupplier uniform(long minMillis, long maxMillis) {
+        return () -> ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+    }
+
+    // Typisch für Netzwerklatenzen: meist schnell, vereinzelt deutlich langsamer
+    public static LongSupplier exponential(double meanMillis) {
+        return () -> (long) (-meanMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getStatusCount(int status) {
+        LongAdder count = statusCounts.get(status);
+        return count != null ? count.sum() : 0;
+    }
+
+    public int getPatientCount() {
+        return patients.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            String path = exchange.getRequestURI().getPath().substring(BASE_PATH.length());
+            String method = exchange.getRequestMethod();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            pause(latency.getAsLong());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < slowRate) {
+                pause(slowMillis);
+            }
+            if (random.nextDouble() < throttleRate) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                respond(exchange, 429, outcome("throttled"));
+                return;
+            }
+            if (random.nextDouble() < errorRate) {
+                respond(exchange, errorStatus, outcome("simulated failure"));
+                return;
+            }
+
+            if (path.equals("/health")) {
+                respond(exchange, 200, "OK");
+            } else if ((path.isEmpty() || path.equals("/")) && method.equals("POST")) {
+                respond(exchange, 200, bundle(body));
+            } else if (path.equals("/Patient") && method.equals("POST")) {
+                String existing = match(exchange.getRequestHeaders().getFirst("If-None-Exist"));
+                Stored stored = existing != null ? patients.get(existing) : create(body);
+                String id = idOf(stored);
+                exchange.getResponseHeaders().add("Location",
+                        getBaseUrl() + "/Patient/" + id + "/_history/" + stored.version);
+                exchange.getResponseHeaders().add("ETag", stored.etag());
+                respond(exchange, existing != null ? 200 : 201, stored.body);
+            } else if (path.startsWith("/Patient/")) {
+                patient(exchange, method, path.substring("/Patient/".length()), body);
+            } else {
+                respond(exchange, 404, outcome("unknown path " + path));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warning("EPA-Simulator: " + e.getMessage());
+            respond(exchange, 400, outcome(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void patient(HttpExchange exchange, String method, String id, String body) throws IOException {
+        Stored stored = patients.get(id);
+        if (method.equals("GET")) {
+            if (stored == null) {
+                respond(exchange, 404, outcome("Patient/" + id + " not found"));
+            } else if (stored.etag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("ETag", stored.etag());
+                respond(exchange, 304, null);
+            } else {
+                exchange.getResponseHeaders().add("ETag", stored.etag());
+                respond(exchange, 200, stored.body);
+            }
+        } else if (method.equals("PUT")) {
+            if (stored == null) {
+                respond(exchange, 404, outcome("Patient/" + id + " not found"));
+                return;
+            }
+            Stored updated = patients.compute(id, (key, old) -> new Stored(withId(body, id), old.version + 1));
+            exchange.getResponseHeaders().add("ETag", updated.etag());
+            respond(exchange, 200, updated.body);
+        } else {
+            respond(exchange, 405, outcome("method not allowed"));
+        }
+    }
+
+    private Stored create(String body) {
+        String id = "SIM-" + ids.incrementAndGet();
+        Stored stored = new Stored(withId(body, id), 1);
+        patients.put(id, stored);
+        String identifier = identifierOf(stored.body);
+        if (identifier != null) {
+            identifiers.putIfAbsent(identifier, id);
+        }
+        return stored;
+    }
+
+    // ID des Patienten, den eine Bedingung "identifier=system|value" trifft; null, wenn keiner
+    private String match(String condition) {
+        if (condition == null || !condition.startsWith("identifier=")) {
+            return null;
+        }
+        return identifiers.get(URLDecoder.decode(condition.substring("identifier=".length()), StandardCharsets.UTF_8));
+    }
+
+    private static String identifierOf(String body) {
+        JsonObject resource = Json.createReader(new StringReader(body)).readObject();
+        if (!resource.containsKey("identifier") || resource.getJsonArray("identifier").isEmpty()) {
+            return null;
+        }
+        JsonObject identifier = resource.getJsonArray("identifier").getJsonObject(0);
+        return identifier.getString("system", "") + "|" + identifier.getString("value", "");
+    }
+
+    // Antwort-Bundle mit einem Eintrag pro Request-Eintrag in gleicher Reihenfolge
+    private String bundle(String body) {
+        JsonObject request = Json.createReader(new StringReader(body)).readObject();
+        String type = request.getString("type", "batch");
+        JsonArrayBuilder entries = Json.createArrayBuilder();
+        for (JsonValue value : request.getJsonArray("entry")) {
+            JsonObject entry = value.asJsonObject();
+            String resource = entry.getJsonObject("resource").toString();
+            JsonObject entryRequest = entry.getJsonObject("request");
+            String status;
+            Stored stored;
+            if ("PUT".equals(entryRequest.getString("method", "POST"))) {
+                String id = entryRequest.getString("url").substring("Patient/".length());
+                stored = patients.computeIfPresent(id, (key, old) -> new Stored(withId(resource, id), old.version + 1));
+                status = stored != null ? "200 OK" : "404 Not Found";
+            } else {
+                String existing = match(entryRequest.getString("ifNoneExist", null));
+                stored = existing != null ? patients.get(existing) : create(resource);
+                status = existing != null ? "200 OK" : "201 Created";
+            }
+            JsonObjectBuilder response = Json.createObjectBuilder().add("status", status);
+            if (stored != null) {
+                response.add("location", "Patient/" + idOf(stored) + "/_history/" + stored.version);
+            }
+            entries.add(Json.createObjectBuilder().add("response", response));
+        }
+        return Json.createObjectBuilder()
+                .add("resourceType", "Bundle")
+                .add("type", type + "-response")
+                .add("entry", entries)
+                .build().toString();
+    }
+
+    private static String withId(String body, String id) {
+        JsonObject resource = Json.createReader(new StringReader(body)).readObject();
+        return Json.createObjectBuilder(resource).add("id", id).build().toString();
+    }
+
+    private static String idOf(Stored stored) {
+        return Json.createReader(new StringReader(stored.body)).readObject().getString("id");
+    }
+
+    private static String outcome(String diagnostics) {
+        return Json.createObjectBuilder()
+                .add("resourceType", "OperationOutcome")
+                .add("issue", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                        .add("severity", "error")
+                        .add("diagnostics", diagnostics)))
+                .build().toString();
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        statusCounts.computeIfAbsent(status, key -> new LongAdder()).increment();
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/fhir+json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Eigenständiger Start; Einstellungen über -Depa.simulator.* (latency als "min-max" in ms)
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8081;
+        String[] latency = System.getProperty("epa.simulator.latency", "5-50").split("-");
+        EPASimulator simulator = start(port)
+                .latency(uniform(Long.parseLong(latency[0]), Long.parseLong(latency[1])))
+                .errors(Double.parseDouble(System.getProperty("epa.simulator.errorRate", "0")),
+                        Integer.parseInt(System.getProperty("epa.simulator.errorStatus", "503")))
+                .throttling(Double.parseDouble(System.getProperty("epa.simulator.throttleRate", "0")),
+                        Integer.parseInt(System.getProperty("epa.simulator.retryAfter", "1")))
+                .slowResponses(Double.parseDouble(System.getProperty("epa.simulator.slowRate", "0")),
+                        Long.parseLong(System.getProperty("epa.simulator.slowMillis", "2000")));
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        LOGGER.info("EPA_BASE_URL=" + simulator.getBaseUrl() + " (Beenden mit Strg+C)");
+        Thread.currentThread().join();
+    }
+}
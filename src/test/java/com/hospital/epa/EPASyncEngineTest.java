@@ -0,0 +1,161 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.hospital.entity.Patient;
+
+class EPASyncEngineTest {
+
+    @Test
+    @DisplayName("Engine never exceeds the configured concurrency")
+    void testConcurrencyLimit() {
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        EPASyncEngine engine = new EPASyncEngine(4, patient -> {
+            peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+            sleep(20);
+            current.decrementAndGet();
+            return new EPAResponse(true, "EPA-" + patient.getId(), "ok");
+        });
+
+        EPASyncResult result = engine.run(patients(40));
+
+        assertEquals(40, result.getSuccessCount());
+        assertTrue(peak.get() <= 4, "peak concurrency was " + peak.get());
+        assertTrue(peak.get() > 1, "sends should overlap");
+    }
+
+    @Test
+    @DisplayName("Counts are aggregated thread-safely")
+    void testAggregation() {
+        EPASyncEngine engine = new EPASyncEngine(16,
+                patient -> new EPAResponse(patient.getId() % 3 != 0, null, "msg"));
+
+        EPASyncResult result = engine.run(patients(300));
+
+        assertEquals(200, result.getSuccessCount());
+        assertEquals(100, result.getFailedCount());
+    }
+
+    @Test
+    @DisplayName("Same patient twice is sent sequentially in input order")
+    void testPerPatientOrdering() {
+        Patient first = patient(7L);
+        first.setPhone("first");
+        Patient second = patient(7L);
+        second.setPhone("second");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger inFlightForSeven = new AtomicInteger();
+
+        EPASyncEngine engine = new EPASyncEngine(8, patient -> {
+            if (patient.getId() == 7L) {
+                assertEquals(1, inFlightForSeven.incrementAndGet());
+                sleep(30);
+                order.add(patient.getPhone());
+                inFlightForSeven.decrementAndGet();
+            }
+            return new EPAResponse(true, null, "ok");
+        });
+
+        List<Patient> input = new ArrayList<>(patients(10));
+        input.add(2, first);
+        input.add(second);
+        EPASyncResult result = engine.run(input);
+
+        assertEquals(12, result.getSuccessCount());
+        assertEquals(List.of("first", "second"), order);
+    }
+
+    @Test
+    @DisplayName("Exceptions from the sender count as failures")
+    void testSenderException() {
+        EPASyncEngine engine = new EPASyncEngine(2, patient -> {
+            throw new IllegalStateException("boom");
+        });
+
+        EPASyncResult result = engine.run(patients(3));
+
+        assertEquals(0, result.getSuccessCount());
+        assertEquals(3, result.getFailedCount());
+    }
+
+    @Test
+    @DisplayName("Cancellation stops dispatching further patients")
+    void testCancellation() {
+        AtomicInteger sent = new AtomicInteger();
+        EPASyncEngine engine = new EPASyncEngine(1, patient -> {
+            sent.incrementAndGet();
+            return new EPAResponse(true, null, "ok");
+        });
+
+        EPASyncResult result = engine.run(patients(50), (patient, response) -> {
+        }, () -> sent.get() >= 5);
+
+        assertTrue(sent.get() < 50, "sent " + sent.get() + " patients");
+        assertEquals(sent.get(), result.getSuccessCount());
+    }
+
+    @Test
+    @DisplayName("Sends run on threads of the supplied (managed) thread factory")
+    void testThreadFactory() {
+        AtomicInteger created = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        EPASyncEngine engine = new EPASyncEngine(4, patient -> {
+            threads.add(Thread.currentThread().getName());
+            return new EPAResponse(true, null, "ok");
+        }, task -> new Thread(task, "managed-" + created.incrementAndGet()));
+
+        EPASyncResult result = engine.run(patients(10));
+
+        assertEquals(10, result.getSuccessCount());
+        assertTrue(created.get() > 0);
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("managed-")), threads.toString());
+    }
+
+    @Test
+    @DisplayName("Concurrency below one is rejected")
+    void testInvalidConcurrency() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new EPASyncEngine(0, patient -> new EPAResponse(true, null, "ok")));
+    }
+
+    private static List<Patient> patients(int count) {
+        List<Patient> patients = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            patients.add(patient(id + 100));
+        }
+        return patients;
+    }
+
+    private static Patient patient(Long id) {
+        Patient patient = new Patient();
+        patient.setId(id);
+        patient.setFirstName("Test");
+        patient.setLastName("Patient" + id);
+        patient.setDateOfBirth(LocalDate.of(1980, 1, 1));
+        patient.setInsuranceNumber("INS-" + id);
+        return patient;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
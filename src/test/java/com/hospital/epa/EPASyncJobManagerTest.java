@@ -0,0 +1,232 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.hospital.entity.EPASyncCheckpoint;
+import com.hospital.entity.Patient;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+
+class EPASyncJobManagerTest {
+
+    @Mock
+    private ManagedExecutorService executor;
+
+    @Mock
+    private EPAIntegrationService epaService;
+
+    @Mock
+    private EPASyncRepository repository;
+
+    @Mock
+    private EPASyncResultWriter resultWriter;
+
+    @Spy
+    private EPAConfigService configService = new EPAConfigService();
+
+    @Spy
+    private EPAMetrics metrics = new EPAMetrics();
+
+    @Spy
+    private FHIRConverter fhirConverter = new FHIRConverter();
+
+    @InjectMocks
+    private EPASyncJobManager jobManager;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Job im aufrufenden Thread ausführen
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+    }
+
+    @Test
+    @DisplayName("Delta job reads candidates in id-ordered chunks and stores every result")
+    @SuppressWarnings("unchecked")
+    void testDeltaJobProcessesChunks() {
+        List<Patient> first = patients(1, 2);
+        List<Patient> second = patients(7);
+        when(repository.countSyncCandidates(true)).thenReturn(3L);
+        when(repository.findSyncCandidates(eq(true), eq(0L), anyInt())).thenReturn(first);
+        when(repository.findSyncCandidates(eq(true), eq(2L), anyInt())).thenReturn(second);
+        when(repository.findSyncCandidates(eq(true), eq(7L), anyInt())).thenReturn(List.of());
+        when(epaService.syncAllPatientsToEPA(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Patient> chunk = invocation.getArgument(0);
+            BiConsumer<Patient, EPAResponse> onResult = invocation.getArgument(2);
+            chunk.forEach(p -> onResult.accept(p, new EPAResponse(p.getId() != 7L, "EPA-" + p.getId(), "ok")));
+            return new EPASyncResult();
+        });
+
+        EPASyncJob job = jobManager.start(null, true);
+
+        assertEquals(EPASyncJob.State.COMPLETED, job.getState());
+        assertEquals(3, job.getTotal());
+        assertEquals(2, job.getSucceeded());
+        assertEquals(1, job.getFailed());
+        // Ein mengenbasiertes Update pro Block statt eines pro Patient
+        ArgumentCaptor<List<EPASyncResultWriter.Outcome>> written = ArgumentCaptor.forClass(List.class);
+        verify(resultWriter, times(2)).write(written.capture());
+        assertEquals(List.of(2, 1), written.getAllValues().stream().map(List::size).toList());
+        assertEquals(7L, written.getAllValues().get(1).get(0).getPatientId());
+        verify(repository, never()).recordResult(any(Patient.class), any(EPAResponse.class));
+        verify(epaService, times(2)).syncAllPatientsToEPA(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("A chunk whose results could not be stored is not checkpointed")
+    @SuppressWarnings("unchecked")
+    void testUnwrittenChunkIsNotCheckpointed() {
+        when(repository.countSyncCandidates(false)).thenReturn(1L);
+        when(repository.findSyncCandidates(eq(false), eq(0L), anyInt())).thenReturn(patients(1));
+        when(repository.findSyncCandidates(eq(false), eq(1L), anyInt())).thenReturn(List.of());
+        when(epaService.syncAllPatientsToEPA(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Patient> chunk = invocation.getArgument(0);
+            BiConsumer<Patient, EPAResponse> onResult = invocation.getArgument(2);
+            chunk.forEach(p -> onResult.accept(p, new EPAResponse(true, "EPA-" + p.getId(), "ok")));
+            return new EPASyncResult();
+        });
+        when(resultWriter.write(any())).thenThrow(new IllegalStateException("DB down"));
+
+        EPASyncJob job = jobManager.start("single", false);
+
+        assertEquals(EPASyncJob.State.COMPLETED, job.getState());
+        verify(repository, never()).saveCheckpoint(any(), eq(1L), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("Failing repository marks the job as failed")
+    void testJobFailure() {
+        when(repository.countSyncCandidates(false)).thenReturn(1L);
+        when(repository.findSyncCandidates(eq(false), anyLong(), anyInt()))
+                .thenThrow(new IllegalStateException("DB down"));
+
+        EPASyncJob job = jobManager.start("bundle", false);
+
+        assertEquals(EPASyncJob.State.FAILED, job.getState());
+        assertSame(job, jobManager.getJob(job.getId()));
+        assertNull(jobManager.getActiveJob());
+    }
+
+    @Test
+    @DisplayName("Spread jobs pace their uploads over the requested period")
+    @SuppressWarnings("unchecked")
+    void testSpreadJobIsPaced() {
+        when(repository.countSyncCandidates(true)).thenReturn(2L);
+        when(repository.findSyncCandidates(eq(true), eq(0L), anyInt())).thenReturn(patients(1, 2));
+        when(repository.findSyncCandidates(eq(true), eq(2L), anyInt())).thenReturn(List.of());
+        when(epaService.syncAllPatientsToEPA(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Patient> chunk = invocation.getArgument(0);
+            BiConsumer<Patient, EPAResponse> onResult = invocation.getArgument(2);
+            chunk.forEach(p -> onResult.accept(p, new EPAResponse(true, "EPA-" + p.getId(), "ok")));
+            return new EPASyncResult();
+        });
+        long start = System.nanoTime();
+
+        EPASyncJob job = jobManager.start("single", true, 1);
+
+        assertEquals(EPASyncJob.State.COMPLETED, job.getState());
+        assertTrue(System.nanoTime() - start >= 900_000_000L, "two patients over one second");
+    }
+
+    @Test
+    @DisplayName("Jobs stop sending once the deadline has passed")
+    void testDeadline() {
+        configService.override(EPAConfigService.SYNC_JOB_DEADLINE_MINUTES, "0");
+        when(repository.countSyncCandidates(false)).thenReturn(10L);
+
+        EPASyncJob job = jobManager.start("single", false);
+
+        assertEquals(EPASyncJob.State.FAILED, job.getState());
+        assertEquals(1, metrics.getTimeoutCount("sync-job"));
+        verify(epaService, never()).syncAllPatientsToEPA(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Interrupted runs resume after their last checkpoint")
+    @SuppressWarnings("unchecked")
+    void testResumesFromCheckpoint() {
+        EPASyncCheckpoint checkpoint = new EPASyncCheckpoint("run-1", "single", false, LocalDateTime.now());
+        checkpoint.setLastPatientId(500L);
+        checkpoint.setProcessed(500L);
+        when(repository.findResumableCheckpoint(eq("single"), eq(false), any())).thenReturn(checkpoint);
+        when(repository.countSyncCandidates(false, 500L)).thenReturn(2L);
+        when(repository.findSyncCandidates(eq(false), eq(500L), anyInt())).thenReturn(patients(501, 502));
+        when(repository.findSyncCandidates(eq(false), eq(502L), anyInt())).thenReturn(List.of());
+        when(epaService.syncAllPatientsToEPA(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Patient> chunk = invocation.getArgument(0);
+            BiConsumer<Patient, EPAResponse> onResult = invocation.getArgument(2);
+            chunk.forEach(p -> onResult.accept(p, new EPAResponse(true, "EPA-" + p.getId(), "ok")));
+            return new EPASyncResult();
+        });
+
+        EPASyncJob job = jobManager.start("single", false);
+
+        assertEquals(EPASyncJob.State.COMPLETED, job.getState());
+        assertEquals("run-1", job.getRunId());
+        assertEquals(500L, job.getResumedAfterId());
+        assertEquals(2, job.getTotal());
+        verify(repository, never()).findSyncCandidates(eq(false), eq(0L), anyInt());
+        verify(repository).saveCheckpoint(job, 502L, 502L, EPASyncCheckpoint.STATUS_RUNNING);
+        verify(repository).saveCheckpoint(job, 502L, 502L, EPASyncCheckpoint.STATUS_COMPLETED);
+    }
+
+    @Test
+    @DisplayName("A chunk interrupted by cancellation does not advance the checkpoint")
+    @SuppressWarnings("unchecked")
+    void testPartialChunkIsNotCheckpointed() {
+        when(repository.countSyncCandidates(false)).thenReturn(2L);
+        when(repository.findSyncCandidates(eq(false), eq(0L), anyInt())).thenReturn(patients(1, 2));
+        when(epaService.syncAllPatientsToEPA(any(), any(), any(), any())).thenAnswer(invocation -> {
+            List<Patient> chunk = invocation.getArgument(0);
+            BiConsumer<Patient, EPAResponse> onResult = invocation.getArgument(2);
+            onResult.accept(chunk.get(0), new EPAResponse(true, "EPA-1", "ok"));
+            jobManager.getActiveJob().cancel();
+            return new EPASyncResult();
+        });
+
+        EPASyncJob job = jobManager.start("single", false);
+
+        assertEquals(EPASyncJob.State.CANCELLED, job.getState());
+        verify(repository, never()).saveCheckpoint(any(), eq(2L), anyLong(), any());
+        verify(repository).saveCheckpoint(job, 0L, 1L, EPASyncCheckpoint.STATUS_CANCELLED);
+    }
+
+    private static List<Patient> patients(long... ids) {
+        List<Patient> patients = new ArrayList<>();
+        for (long id : ids) {
+            Patient patient = new Patient();
+            patient.setId(id);
+            patients.add(patient);
+        }
+        return patients;
+    }
+}
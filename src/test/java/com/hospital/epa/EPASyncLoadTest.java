@@ -0,0 +1,190 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import com.hospital.entity.Patient;
+
+/**
+ * Durchsatz der EPA-Synchronisation gegen den lokalen {@link EPASimulator}.
+ * Läuft nicht im normalen Build, nur mit dem Profil load-test. Anzahl der Patienten über
+ * -Depa.loadtest.patients (Standard 300), z.B.
+ * mvn test -Pload-test -Dtest=EPASyncLoadTest -Depa.loadtest.patients=20000
+ */
+@Tag("load")
+class EPASyncLoadTest {
+
+    private static final Logger LOGGER = Logger.getLogger(EPASyncLoadTest.class.getName());
+
+    private static final int PATIENTS = Integer.getInteger("epa.loadtest.patients", 300);
+
+    @Spy
+    private FHIRConverter fhirConverter = new FHIRConverter();
+
+    @Spy
+    private EPAMetrics metrics = new EPAMetrics();
+
+    // Kein Spy: der Transport muss dieselbe Instanz halten, die setUp initialisiert
+    private final EPAClientProvider clientProvider = new EPAClientProvider();
+
+    @Spy
+    private EPAJaxRsTransport jaxRsTransport = new EPAJaxRsTransport(clientProvider);
+
+    @Spy
+    private EPAHttp2Transport http2Transport = new EPAHttp2Transport();
+
+    @Spy
+    private EPACircuitBreaker circuitBreaker = new EPACircuitBreaker();
+
+    @Spy
+    private EPAConfigService configService = new EPAConfigService();
+
+    // Gemessen wird die Synchronisation, nicht das clientseitige Rate-Limit
+    @Spy
+    private EPARateLimiter rateLimiter = new EPARateLimiter(100_000, 100_000, System::nanoTime);
+
+    @Spy
+    private EPASyncLogWriter syncLog = new EPASyncLogWriter();
+
+    @Spy
+    private EPAFetchCache fetchCache = new EPAFetchCache();
+
+    @InjectMocks
+    private EPAIntegrationService epaService;
+
+    private EPASimulator simulator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MockitoAnnotations.openMocks(this);
+        clientProvider.init();
+        simulator = EPASimulator.start(0).latency(EPASimulator.uniform(2, 10));
+        epaService.useTestEndpoint(simulator.getBaseUrl().toString(), "test-key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+        http2Transport.close();
+        clientProvider.close();
+    }
+
+    @Test
+    @DisplayName("Load: single uploads (syncAllPatientsToEPA)")
+    void testSingleUploadThroughput() {
+        EPASyncResult result = measure("einzeln/jaxrs", epaService::syncAllPatientsToEPA);
+
+        assertEquals(PATIENTS, result.getSuccessCount());
+        assertEquals(PATIENTS, simulator.getPatientCount());
+    }
+
+    @Test
+    @DisplayName("Load: single uploads over the HTTP/2 transport")
+    void testHttp2Throughput() {
+        configService.override(EPAConfigService.TRANSPORT, "http2");
+
+        EPASyncResult result = measure("einzeln/http2", epaService::syncAllPatientsToEPA);
+
+        assertEquals(PATIENTS, result.getSuccessCount());
+        assertEquals(PATIENTS, simulator.getPatientCount());
+    }
+
+    @Test
+    @DisplayName("Load: bundled uploads (syncAllPatientsInBundles)")
+    void testBundleThroughput() {
+        EPASyncResult result = measure("bundle",
+                patients -> epaService.syncAllPatientsInBundles(patients, (patient, response) -> {
+                }));
+
+        assertEquals(PATIENTS, result.getSuccessCount());
+        assertEquals(PATIENTS, simulator.getPatientCount());
+    }
+
+    @Test
+    @DisplayName("Load: resync of known patients updates instead of creating duplicates")
+    void testResyncUpdatesKnownPatients() {
+        List<Patient> patients = createPatients(PATIENTS);
+        epaService.syncAllPatientsToEPA(patients, (patient, response) -> {
+            patient.setEpaId(response.getEpaId());
+            patient.setEpaPayloadHash(response.getPayloadHash());
+        });
+        // Lokale Änderung bei allen, EPA-ID bei einem verloren (z.B. Restore)
+        patients.forEach(patient -> patient.setPhone("030-" + patient.getId()));
+        String lostEpaId = patients.get(0).getEpaId();
+        patients.get(0).setEpaId(null);
+
+        long start = System.nanoTime();
+        EPASyncResult result = epaService.syncAllPatientsToEPA(patients, (patient, response) -> {
+            if (patient.getEpaId() == null) {
+                patient.setEpaId(response.getEpaId());
+            }
+        });
+        LOGGER.info(String.format(Locale.ROOT, "EPA-Lasttest resync: %d Patienten in %d ms",
+                patients.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+        assertEquals(PATIENTS, result.getSuccessCount());
+        assertEquals(PATIENTS, simulator.getPatientCount());
+        assertEquals(PATIENTS - 1, metrics.getRequestCount("update"));
+        assertEquals(lostEpaId, patients.get(0).getEpaId());
+    }
+
+    @Test
+    @DisplayName("Load: errors, 429 throttling and slow responses are retried")
+    void testFaultInjection() {
+        configService.override(EPAConfigService.RETRY_ATTEMPTS, "6");
+        simulator.errors(0.05, 503).throttling(0.05, 0).slowResponses(0.02, 200);
+
+        EPASyncResult result = measure("einzeln/fehler", epaService::syncAllPatientsToEPA);
+
+        assertEquals(PATIENTS, result.getSuccessCount());
+        assertTrue(simulator.getStatusCount(429) + simulator.getStatusCount(503) > 0);
+        // Jede gedrosselte oder fehlgeschlagene Antwort wurde genau einmal wiederholt
+        assertEquals(simulator.getStatusCount(429) + simulator.getStatusCount(503), metrics.getRetryCount("create"));
+        assertEquals(PATIENTS, simulator.getPatientCount());
+    }
+
+    private EPASyncResult measure(String scenario, Function<List<Patient>, EPASyncResult> sync) {
+        List<Patient> patients = createPatients(PATIENTS);
+        long start = System.nanoTime();
+        EPASyncResult result = sync.apply(patients);
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOGGER.info(String.format(Locale.ROOT,
+                "EPA-Lasttest %s: %d Patienten in %d ms = %.1f Patienten/s (%d Requests, %d ok, %d fehlgeschlagen)",
+                scenario, patients.size(), millis, patients.size() * 1000.0 / millis, simulator.getRequestCount(),
+                result.getSuccessCount(), result.getFailedCount()));
+        return result;
+    }
+
+    private static List<Patient> createPatients(int count) {
+        List<Patient> patients = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            Patient patient = new Patient();
+            patient.setId(id);
+            patient.setFirstName("Last");
+            patient.setLastName("Test " + id);
+            patient.setDateOfBirth(LocalDate.of(1950, 1, 1).plusDays(id));
+            patient.setGender(id % 2 == 0 ? "Weiblich" : "Männlich");
+            patient.setInsuranceNumber(String.format("INS-LOAD-%06d", id));
+            patient.setEpaEnabled(true);
+            patients.add(patient);
+        }
+        return patients;
+    }
+}
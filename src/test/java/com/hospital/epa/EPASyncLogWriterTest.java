@@ -0,0 +1,82 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+class EPASyncLogWriterTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @InjectMocks
+    private EPASyncLogWriter writer = new EPASyncLogWriter(3);
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    @DisplayName("Full buffer drops entries instead of blocking")
+    void testDropWhenFull() {
+        for (int i = 0; i < 5; i++) {
+            writer.record(entry(i));
+        }
+
+        assertEquals(3, writer.getQueued());
+        assertEquals(2, writer.getDropped());
+    }
+
+    @Test
+    @DisplayName("Flush writes buffered entries with one multi-row INSERT")
+    void testFlushMultiRowInsert() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        writer.record(entry(1));
+        writer.record(entry(2));
+
+        writer.flush();
+
+        verify(connection).prepareStatement(EPASyncLogWriter.insertSql(2));
+        verify(statement, times(1)).executeUpdate();
+        verify(statement).setLong(1, 1L);
+        verify(statement).setLong(8, 2L);
+        assertEquals(0, writer.getQueued());
+        assertEquals(2, writer.getWritten());
+    }
+
+    @Test
+    @DisplayName("Generated SQL contains one VALUES row per entry")
+    void testInsertSql() {
+        String sql = EPASyncLogWriter.insertSql(3);
+
+        assertTrue(sql.startsWith("INSERT INTO epa_sync_log"));
+        assertEquals(3, sql.split("::integer, \\?, \\?").length - 1);
+        assertTrue(sql.contains("EXISTS (SELECT 1 FROM patients"));
+    }
+
+    private static EPASyncLogEntry entry(long patientId) {
+        return new EPASyncLogEntry(patientId, "create", "success", "EPA-" + patientId, null,
+                LocalDateTime.now(), 12);
+    }
+}
@@ -0,0 +1,190 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.hospital.entity.Patient;
+
+class EPASyncPipelineTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Chunks pass all stages in read order with converted payloads")
+    void testChunksInOrder() throws Exception {
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 2, 4, patient -> "fhir-" + patient.getId());
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        List<String> payloads = Collections.synchronizedList(new ArrayList<>());
+
+        pipeline.run(chunks(5, 3, null), 0,
+                chunk -> chunk.getPatients().forEach(patient -> {
+                    payloads.add(chunk.getPayload(patient));
+                    chunk.record(patient, new EPAResponse(true, "EPA-" + patient.getId(), "ok"));
+                }),
+                chunk -> {
+                    assertTrue(chunk.isComplete());
+                    written.add(chunk.getLastPatientId());
+                },
+                () -> false);
+
+        assertEquals(List.of(3L, 6L, 9L, 12L, 15L), written);
+        assertEquals(15, payloads.size());
+        assertEquals("fhir-1", payloads.get(0));
+    }
+
+    @Test
+    @DisplayName("A slow send stage holds back the database reader")
+    void testBackPressure() throws Exception {
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 1, 2, patient -> "{}");
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger sent = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        LongFunction<List<Patient>> reader = chunks(20, 10, null);
+
+        pipeline.run(afterId -> {
+            maxAhead.accumulateAndGet(read.incrementAndGet() - sent.get(), Math::max);
+            return reader.apply(afterId);
+        }, 0, chunk -> {
+            pause(20);
+            sent.incrementAndGet();
+        }, chunk -> {
+        }, () -> false);
+
+        assertEquals(21, read.get());
+        assertEquals(20, sent.get());
+        // Je Stufe ein Block in Arbeit und einer im Puffer, dazu der gerade gelesene
+        assertTrue(maxAhead.get() <= 6, "Leser war " + maxAhead.get() + " Blöcke voraus");
+    }
+
+    @Test
+    @DisplayName("Chunks read before a database error are still sent and written")
+    void testReaderFailure() {
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 2, 2, patient -> "{}");
+        List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        IllegalStateException failure = new IllegalStateException("DB down");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> pipeline.run(chunks(5, 2, failure), 0, chunk -> {
+                }, chunk -> written.add(chunk.getLastPatientId()), () -> false));
+
+        assertSame(failure, thrown);
+        assertEquals(List.of(2L, 4L, 6L, 8L, 10L), written);
+    }
+
+    @Test
+    @DisplayName("A failing stage stops the reader and is reported")
+    void testStageFailure() {
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 1, 2, patient -> "{}");
+        AtomicInteger read = new AtomicInteger();
+        LongFunction<List<Patient>> reader = chunks(1000, 1, null);
+
+        assertThrows(IllegalStateException.class, () -> pipeline.run(afterId -> {
+            read.incrementAndGet();
+            return reader.apply(afterId);
+        }, 0, chunk -> {
+            if (chunk.getLastPatientId() == 3) {
+                throw new IllegalStateException("send failed");
+            }
+        }, chunk -> {
+        }, () -> false));
+
+        assertTrue(read.get() < 1000, "Leser hätte anhalten müssen, las " + read.get());
+    }
+
+    @Test
+    @DisplayName("Patients that cannot be converted are passed on without payload")
+    void testConversionFailure() throws Exception {
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 1, 2, patient -> {
+            if (patient.getId() == 2L) {
+                throw new NullPointerException("dateOfBirth");
+            }
+            return "{}";
+        });
+        List<String> payloads = Collections.synchronizedList(new ArrayList<>());
+
+        pipeline.run(chunks(1, 2, null), 0,
+                chunk -> chunk.getPatients().forEach(patient -> payloads.add(chunk.getPayload(patient))),
+                chunk -> assertEquals(0, chunk.getOutcomes().size()), () -> false);
+
+        assertNotNull(payloads.get(0));
+        assertNull(payloads.get(1));
+    }
+
+    @Test
+    @DisplayName("Conversion runs on threads from the given worker factory")
+    void testWorkerFactory() throws Exception {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("managed-" + thread.getName());
+            return thread;
+        };
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        EPASyncPipeline pipeline = new EPASyncPipeline(executor, 1, 2, patient -> {
+            threads.add(Thread.currentThread().getName());
+            return "{}";
+        }, factory);
+
+        pipeline.run(chunks(3, 4, null), 0, chunk -> {
+        }, chunk -> {
+        }, () -> false);
+
+        assertEquals(12, threads.size());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("managed-")), threads.toString());
+    }
+
+    // Keyset-Leser über count Blöcke mit je size Patienten; danach leer oder failure
+    private static LongFunction<List<Patient>> chunks(int count, int size, RuntimeException failure) {
+        return afterId -> {
+            if (afterId >= (long) count * size) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return List.of();
+            }
+            List<Patient> patients = new ArrayList<>();
+            for (long id = afterId + 1; id <= afterId + size; id++) {
+                Patient patient = new Patient();
+                patient.setId(id);
+                patients.add(patient);
+            }
+            return patients;
+        };
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hospital.epa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.hospital.entity.Patient;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+class EPASyncResultWriterTest {
+
+    @Mock
+    private EntityManager em;
+
+    @Mock
+    private Query query;
+
+    @InjectMocks
+    private EPASyncResultWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(em.createNativeQuery(anyString())).thenReturn(query);
+        when(query.executeUpdate()).thenAnswer(invocation -> 1);
+    }
+
+    @Test
+    @DisplayName("Successes and failures are written with one statement each")
+    void testOneStatementPerOutcomeType() {
+        LocalDateTime updatedAt = LocalDateTime.of(2024, 5, 1, 12, 0);
+        List<EPASyncResultWriter.Outcome> outcomes = List.of(
+                new EPASyncResultWriter.Outcome(patient(1L, updatedAt),
+                        new EPAResponse(true, "EPA-1", "ok").withPayloadHash("hash-1")),
+                new EPASyncResultWriter.Outcome(patient(2L, null), new EPAResponse(false, null, "HTTP 400")),
+                new EPASyncResultWriter.Outcome(patient(3L, updatedAt), EPAResponse.skipped("EPA-3", "hash-3")));
+
+        writer.write(outcomes);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(em, times(2)).createNativeQuery(sql.capture());
+        String synced = sql.getAllValues().get(0);
+        assertTrue(synced.startsWith("UPDATE patients p SET"));
+        assertTrue(synced.contains("FROM (VALUES (CAST(?1 AS bigint), CAST(?2 AS varchar), CAST(?3 AS varchar), "
+                + "CAST(?4 AS timestamp)), (CAST(?5 AS bigint)"));
+        assertTrue(synced.contains("p.updated_at = v.updated_at"));
+        assertTrue(sql.getAllValues().get(1).contains("epa_sync_status = 'error'"));
+        verify(query).setParameter(1, 1L);
+        verify(query).setParameter(2, "EPA-1");
+        verify(query).setParameter(3, "hash-1");
+        verify(query).setParameter(4, updatedAt);
+        verify(query).setParameter(5, 3L);
+        verify(query).setParameter(2, "HTTP 400");
+        verify(query, times(2)).executeUpdate();
+    }
+
+    @Test
+    @DisplayName("Large batches are split to stay below the bind parameter limit")
+    void testLargeBatchIsSplit() {
+        List<EPASyncResultWriter.Outcome> outcomes = new ArrayList<>();
+        for (long id = 1; id <= EPASyncResultWriter.MAX_ROWS_PER_STATEMENT + 1; id++) {
+            outcomes.add(new EPASyncResultWriter.Outcome(patient(id, null), new EPAResponse(true, "EPA-" + id, "ok")));
+        }
+
+        int updated = writer.write(outcomes);
+
+        assertEquals(2, updated);
+        verify(em, times(2)).createNativeQuery(anyString());
+        verify(query, times(4 * outcomes.size())).setParameter(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Value lists number their parameters consecutively")
+    void testValues() {
+        assertEquals("(?1, ?2), (?3, ?4)", EPASyncResultWriter.values("(?%d, ?%d)", 2, 2));
+    }
+
+    private static Patient patient(Long id, LocalDateTime updatedAt) {
+        // updatedAt setzt nur der Entity-Lebenszyklus
+        Patient patient = spy(new Patient());
+        patient.setId(id);
+        when(patient.getUpdatedAt()).thenReturn(updatedAt);
+        return patient;
+    }
+}
@@ -24,4 +24,16 @@ class EPAValueObjectsTest {
         assertEquals(5, s.getSuccessCount());
         assertEquals(2, s.getFailedCount());
     }
+
+    @Test
+    @DisplayName("EPASyncResult counts skipped responses separately")
+    void testEPASyncResultSkipped() {
+        EPASyncResult s = new EPASyncResult();
+        s.record(new EPAResponse(true, "EPA-1", "ok"));
+        s.record(new EPAResponse(false, null, "error"));
+        s.record(EPAResponse.skipped("EPA-2", "abc"));
+        assertEquals(1, s.getSuccessCount());
+        assertEquals(1, s.getFailedCount());
+        assertEquals(1, s.getSkippedCount());
+    }
 }
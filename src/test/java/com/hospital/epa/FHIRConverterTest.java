@@ -278,6 +278,88 @@ class FHIRConverterTest {
         assertEquals(2, bundle.getJsonArray("entry").size());
     }
 
+    @Test
+    @DisplayName("Should create transaction bundle with POST requests")
+    void testCreateTransactionBundle() {
+        // Arrange
+        Patient patient2 = new Patient();
+        patient2.setFirstName("Anna");
+        patient2.setLastName("Schmidt");
+        patient2.setDateOfBirth(LocalDate.of(1995, 3, 20));
+        patient2.setGender("Weiblich");
+        patient2.setInsuranceNumber("INS-2024-002");
+
+        // Act
+        String bundleJson = fhirConverter.createTransactionBundle(Arrays.asList(testPatient, patient2), "transaction");
+        JsonObject bundle = Json.createReader(new StringReader(bundleJson)).readObject();
+
+        // Assert
+        assertEquals("Bundle", bundle.getString("resourceType"));
+        assertEquals("transaction", bundle.getString("type"));
+        assertEquals(2, bundle.getJsonArray("entry").size());
+        JsonObject entry = bundle.getJsonArray("entry").getJsonObject(1);
+        assertTrue(entry.getString("fullUrl").startsWith("urn:uuid:"));
+        assertEquals("POST", entry.getJsonObject("request").getString("method"));
+        assertEquals("Patient", entry.getJsonObject("request").getString("url"));
+        assertEquals("Schmidt", entry.getJsonObject("resource").getJsonArray("name")
+                .getJsonObject(0).getString("family"));
+    }
+
+    @Test
+    @DisplayName("Should update known patients and create new ones conditionally in bundles")
+    void testCreateTransactionBundleUpsert() {
+        // Arrange
+        Patient known = new Patient();
+        known.setFirstName("Anna");
+        known.setLastName("Schmidt");
+        known.setDateOfBirth(LocalDate.of(1995, 3, 20));
+        known.setGender("Weiblich");
+        known.setInsuranceNumber("INS-2024-002");
+        known.setEpaId("EPA-77");
+
+        // Act
+        String bundleJson = fhirConverter.createTransactionBundle(Arrays.asList(testPatient, known), "batch");
+        JsonObject bundle = Json.createReader(new StringReader(bundleJson)).readObject();
+
+        // Assert
+        JsonObject create = bundle.getJsonArray("entry").getJsonObject(0).getJsonObject("request");
+        assertEquals("POST", create.getString("method"));
+        assertEquals("identifier=urn%3Aoid%3A1.2.276.0.76.4.8%7C" + testPatient.getInsuranceNumber(),
+                create.getString("ifNoneExist"));
+        JsonObject update = bundle.getJsonArray("entry").getJsonObject(1).getJsonObject("request");
+        assertEquals("PUT", update.getString("method"));
+        assertEquals("Patient/EPA-77", update.getString("url"));
+        assertFalse(update.containsKey("ifNoneExist"));
+    }
+
+    @Test
+    @DisplayName("Should reject unknown bundle type")
+    void testCreateTransactionBundleInvalidType() {
+        assertThrows(IllegalArgumentException.class,
+                () -> fhirConverter.createTransactionBundle(Arrays.asList(testPatient), "collection"));
+    }
+
+    @Test
+    @DisplayName("Should map bundle response entries to EPA ids")
+    void testParseBundleResponse() {
+        // Arrange
+        String response = "{\"resourceType\":\"Bundle\",\"type\":\"batch-response\",\"entry\":["
+                + "{\"response\":{\"status\":\"201 Created\",\"location\":\"Patient/abc-1/_history/1\"}},"
+                + "{\"response\":{\"status\":\"400 Bad Request\"}},"
+                + "{\"response\":{\"status\":\"200 OK\",\"location\":\"https://epa.example.com/fhir/Patient/xyz\"}}]}";
+
+        // Act
+        List<EPAResponse> results = fhirConverter.parseBundleResponse(response);
+
+        // Assert
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("abc-1", results.get(0).getEpaId());
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getMessage().contains("400"));
+        assertEquals("xyz", results.get(2).getEpaId());
+    }
+
     @Test
     @DisplayName("Should handle null values gracefully")
     void testNullValueHandling() {
@@ -313,4 +395,18 @@ class FHIRConverterTest {
         assertTrue(fhirPatient.containsKey("birthDate"));
         assertTrue(fhirPatient.containsKey("active"));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Payload hash ignores fields outside the FHIR document")
+    void testPayloadHash() {
+        String before = FHIRConverter.payloadHash(fhirConverter.patientToFHIR(testPatient));
+
+        testPatient.setAdmissionDate(java.time.LocalDateTime.of(2024, 3, 1, 8, 0));
+        assertEquals(before, FHIRConverter.payloadHash(fhirConverter.patientToFHIR(testPatient)));
+
+        testPatient.setPhone("030-99999999");
+        String after = FHIRConverter.payloadHash(fhirConverter.patientToFHIR(testPatient));
+        assertNotEquals(before, after);
+        assertEquals(64, after.length());
+    }
+}
@@ -3,13 +3,17 @@ package com.hospital.rest;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -17,10 +21,19 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import com.hospital.entity.Patient;
+import com.hospital.epa.EPACircuitBreaker;
+import com.hospital.epa.EPAHealthProber;
+import com.hospital.epa.EPAImportResult;
+import com.hospital.epa.EPAImportService;
 import com.hospital.epa.EPAIntegrationService;
+import com.hospital.epa.EPAMetrics;
+import com.hospital.epa.EPAOutbox;
 import com.hospital.epa.EPAResponse;
+import com.hospital.epa.EPASyncJob;
+import com.hospital.epa.EPASyncJobManager;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
@@ -32,11 +45,29 @@ class EPAResourceTest {
     private EntityManager em;
 
     @Mock
-    private TypedQuery<Patient> typedQuery;
+    private TypedQuery<Long> countQuery;
 
     @Mock
     private EPAIntegrationService epaService;
 
+    @Mock
+    private EPASyncJobManager jobManager;
+
+    @Mock
+    private EPAOutbox outbox;
+
+    @Mock
+    private EPAHealthProber healthProber;
+
+    @Mock
+    private EPAImportService importService;
+
+    @Spy
+    private IdempotencyService idempotency = new IdempotencyService();
+
+    @Spy
+    private EPAMetrics metrics = new EPAMetrics();
+
     @InjectMocks
     private EPAResource epaResource;
 
@@ -59,7 +90,7 @@ class EPAResourceTest {
     @DisplayName("syncPatientToEPA returns 404 when patient not found")
     void testSyncPatientNotFound() {
         when(em.find(Patient.class, 999L)).thenReturn(null);
-        Response resp = epaResource.syncPatientToEPA(999L);
+        Response resp = epaResource.syncPatientToEPA(999L, null);
         assertEquals(Response.Status.NOT_FOUND.getStatusCode(), resp.getStatus());
     }
 
@@ -68,7 +99,7 @@ class EPAResourceTest {
     void testSyncPatientConsentMissing() {
         patient.setEpaEnabled(false);
         when(em.find(Patient.class, 10L)).thenReturn(patient);
-        Response resp = epaResource.syncPatientToEPA(10L);
+        Response resp = epaResource.syncPatientToEPA(10L, null);
         assertEquals(Response.Status.FORBIDDEN.getStatusCode(), resp.getStatus());
     }
 
@@ -80,24 +111,108 @@ class EPAResourceTest {
         when(em.merge(any(Patient.class))).thenReturn(patient);
         doNothing().when(em).flush();
 
-        Response resp = epaResource.syncPatientToEPA(10L);
+        Response resp = epaResource.syncPatientToEPA(10L, null);
         assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
     }
 
     @Test
     @DisplayName("syncAllPatientsToEPA returns message when none have consent")
     void testSyncAllNoConsent() {
-        // create a list where nobody has consent
-        Patient p1 = new Patient();
-        p1.setId(1L);
-        p1.setEpaEnabled(false);
-        when(em.createNamedQuery("Patient.findActive", Patient.class)).thenReturn(typedQuery);
-        when(typedQuery.getResultList()).thenReturn(Arrays.asList(p1));
-
-        Response resp = epaResource.syncAllPatientsToEPA();
+        when(em.createNamedQuery("Patient.countEpaSyncCandidates", Long.class)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(0L);
+
+        Response resp = epaResource.syncAllPatientsToEPA(null, null);
         assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
         String body = (String) resp.getEntity();
         assertTrue(body.contains("Keine Patienten"));
+        verify(jobManager, never()).start(any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("syncAllPatientsToEPA starts a background job and returns 202 with job location")
+    void testSyncAllStartsJob() {
+        EPASyncJob job = new EPASyncJob("bundle");
+        when(em.createNamedQuery("Patient.countEpaSyncCandidates", Long.class)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(3L);
+        when(jobManager.start("bundle", false)).thenReturn(job);
+
+        Response resp = epaResource.syncAllPatientsToEPA("bundle", null);
+
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), resp.getStatus());
+        assertEquals("epa/jobs/" + job.getId(), resp.getLocation().toString());
+        assertTrue(((String) resp.getEntity()).contains("\"status\": \"QUEUED\""));
+    }
+
+    @Test
+    @DisplayName("syncAllPatientsToEPA with scope=changed counts and syncs only changed patients")
+    void testSyncAllChangedOnly() {
+        EPASyncJob job = new EPASyncJob("single", true);
+        when(em.createNamedQuery("Patient.countEpaDeltaCandidates", Long.class)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(2L);
+        when(jobManager.start(null, true)).thenReturn(job);
+
+        Response resp = epaResource.syncAllPatientsToEPA(null, "changed");
+
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), resp.getStatus());
+        assertTrue(((String) resp.getEntity()).contains("\"scope\": \"changed\""));
+    }
+
+    @Test
+    @DisplayName("syncAllPatientsToEPA rejects unknown mode and scope values with 400")
+    void testSyncAllRejectsUnknownMode() {
+        Response badMode = epaResource.syncAllPatientsToEPA("Bundle\"", null);
+        Response longMode = epaResource.syncAllPatientsToEPA("x".repeat(30), null);
+        Response badScope = epaResource.syncAllPatientsToEPA("single", "Changed");
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), badMode.getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), longMode.getStatus());
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), badScope.getStatus());
+        verify(em, never()).createNamedQuery(anyString(), any());
+        verify(jobManager, never()).start(any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("syncAllPatientsToEPA returns 409 while another job is running")
+    void testSyncAllAlreadyRunning() {
+        EPASyncJob running = new EPASyncJob("single");
+        when(em.createNamedQuery("Patient.countEpaSyncCandidates", Long.class)).thenReturn(countQuery);
+        when(countQuery.getSingleResult()).thenReturn(3L);
+        when(jobManager.getActiveJob()).thenReturn(running);
+
+        Response resp = epaResource.syncAllPatientsToEPA(null, null);
+
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), resp.getStatus());
+        assertTrue(((String) resp.getEntity()).contains(running.getId()));
+        verify(jobManager, never()).start(any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("getSyncJob reports progress and 404 for unknown jobs")
+    void testGetSyncJob() {
+        EPASyncJob job = new EPASyncJob("single");
+        job.record(true);
+        job.record(false);
+        when(jobManager.getJob(job.getId())).thenReturn(job);
+
+        Response resp = epaResource.getSyncJob(job.getId());
+        assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        String body = (String) resp.getEntity();
+        assertTrue(body.contains("\"processed\": 2"));
+        assertTrue(body.contains("\"succeeded\": 1"));
+
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), epaResource.getSyncJob("unknown").getStatus());
+    }
+
+    @Test
+    @DisplayName("cancelSyncJob requests cancellation of a running job")
+    void testCancelSyncJob() {
+        EPASyncJob job = new EPASyncJob("single");
+        when(jobManager.getJob(job.getId())).thenReturn(job);
+
+        Response resp = epaResource.cancelSyncJob(job.getId());
+
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), resp.getStatus());
+        verify(jobManager).cancel(job.getId());
     }
 
     @Test
@@ -109,6 +224,7 @@ class EPAResourceTest {
 
         Response resp = epaResource.setEPAConsent(10L, true);
         assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        verify(outbox).enqueue(patient);
     }
 
     @Test
@@ -135,15 +251,54 @@ class EPAResourceTest {
     }
 
     @Test
-    @DisplayName("testConnection forwards service result")
+    @DisplayName("importFromEPA returns the import counters and 400 without ids or above the limit")
+    void testImportFromEPA() {
+        EPAImportResult result = new EPAImportResult();
+        result.recordCreated();
+        result.recordNotFound("E2");
+        when(importService.importByEpaIds(List.of("E1", "E2"))).thenReturn(result);
+
+        Response resp = epaResource.importFromEPA(List.of("E1", "E2"));
+        assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        String body = (String) resp.getEntity();
+        assertTrue(body.contains("\"created\": 1"));
+        assertTrue(body.contains("\"notFound\": 1"));
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), epaResource.importFromEPA(List.of()).getStatus());
+
+        when(importService.importByEpaIds(List.of("E3")))
+                .thenThrow(new IllegalArgumentException("Zu viele Patienten für einen Import"));
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                epaResource.importFromEPA(List.of("E3")).getStatus());
+    }
+
+    @Test
+    @DisplayName("importFhirFromEPA returns 400 for malformed FHIR content")
+    void testImportFhirFromEPAMalformed() {
+        when(importService.importFromFhir("{kaputt"))
+                .thenThrow(new IllegalArgumentException("Ungültiges FHIR-Dokument"));
+        Response resp = epaResource.importFhirFromEPA("{kaputt");
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), resp.getStatus());
+    }
+
+    @Test
+    @DisplayName("testConnection answers from the last health probe")
     void testConnection() {
-        when(epaService.testEPAConnection()).thenReturn(true);
-        Response resp = epaResource.testConnection();
+        EPAHealthProber.Status up = mock(EPAHealthProber.Status.class);
+        when(up.isConnected()).thenReturn(true);
+        when(up.getLatencyMillis()).thenReturn(42L);
+        when(healthProber.getStatus(false)).thenReturn(up);
+        Response resp = epaResource.testConnection(false);
         assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        assertTrue(((String) resp.getEntity()).contains("\"latencyMs\": 42"));
+        verify(epaService, never()).testEPAConnection();
 
-        when(epaService.testEPAConnection()).thenReturn(false);
-        Response resp2 = epaResource.testConnection();
+        EPAHealthProber.Status down = mock(EPAHealthProber.Status.class);
+        when(healthProber.getStatus(true)).thenReturn(down);
+        when(epaService.getCircuitState()).thenReturn(EPACircuitBreaker.State.OPEN);
+        Response resp2 = epaResource.testConnection(true);
         assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), resp2.getStatus());
+        assertTrue(((String) resp2.getEntity()).contains("\"circuitBreaker\": \"OPEN\""));
     }
 
     @Test
@@ -165,4 +320,19 @@ class EPAResourceTest {
         String body = (String) resp.getEntity();
         assertTrue(body.contains("\"total\":") || body.contains("total"));
     }
+
+    @Test
+    @DisplayName("getEPAMetrics exposes pool size, in-flight calls and request counters")
+    void testGetEPAMetrics() {
+        metrics.registerPool(50, 20);
+        metrics.requestStarted("create");
+        metrics.requestFinished("create", false);
+
+        Response resp = epaResource.getEPAMetrics();
+        assertEquals(Response.Status.OK.getStatusCode(), resp.getStatus());
+        String body = (String) resp.getEntity();
+        assertTrue(body.contains("\"maxConnections\": 50"));
+        assertTrue(body.contains("\"inFlight\": 0, \"peakInFlight\": 1"));
+        assertTrue(body.contains("\"create\": 1"));
+    }
 }
@@ -0,0 +1,103 @@
+package com.hospital.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.hospital.entity.IdempotencyRecord;
+
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.core.Response;
+
+class IdempotencyServiceTest {
+
+    @Mock
+    private EntityManager em;
+
+    @InjectMocks
+    private IdempotencyService idempotency;
+
+    private AtomicInteger executions;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        executions = new AtomicInteger();
+    }
+
+    private Response created() {
+        executions.incrementAndGet();
+        return Response.status(Response.Status.CREATED).entity("{\"id\": 7}").build();
+    }
+
+    @Test
+    @DisplayName("Requests without key are executed every time")
+    void testWithoutKey() {
+        idempotency.execute(null, "POST /patients", this::created);
+        idempotency.execute(null, "POST /patients", this::created);
+
+        assertEquals(2, executions.get());
+        verify(em, never()).merge(any());
+    }
+
+    @Test
+    @DisplayName("Retry with same key replays stored response")
+    void testReplay() {
+        Response first = idempotency.execute("key-1", "POST /patients", this::created);
+        Response second = idempotency.execute("key-1", "POST /patients", this::created);
+
+        assertEquals(1, executions.get());
+        assertEquals(201, first.getStatus());
+        assertEquals(201, second.getStatus());
+        assertEquals("{\"id\": 7}", second.getEntity());
+        assertEquals("true", second.getHeaderString(IdempotencyService.REPLAY_HEADER));
+        verify(em, times(1)).merge(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    @DisplayName("Failed responses are not stored")
+    void testFailureNotStored() {
+        idempotency.execute("key-2", "POST /patients", () -> {
+            executions.incrementAndGet();
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        });
+        idempotency.execute("key-2", "POST /patients", this::created);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    @DisplayName("Reusing a key for another endpoint is rejected")
+    void testEndpointMismatch() {
+        idempotency.execute("key-3", "POST /patients", this::created);
+        Response response = idempotency.execute("key-3", "POST /epa/sync/1", this::created);
+
+        assertEquals(422, response.getStatus());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    @DisplayName("Expired records from the table are ignored")
+    void testExpiredRecord() {
+        LocalDateTime past = LocalDateTime.now().minusDays(2);
+        when(em.find(IdempotencyRecord.class, "key-4")).thenReturn(
+                new IdempotencyRecord("key-4", "POST /patients", 201, "{}", past, past.plusHours(24)));
+
+        idempotency.execute("key-4", "POST /patients", this::created);
+
+        assertEquals(1, executions.get());
+    }
+}
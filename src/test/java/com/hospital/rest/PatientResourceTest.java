@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -19,13 +20,19 @@ import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import com.hospital.entity.Patient;
+import com.hospital.epa.EPAOutbox;
 
+import jakarta.persistence.Cache;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import jakarta.ws.rs.core.Response;
 
@@ -40,6 +47,12 @@ class PatientResourceTest {
     @Mock
     private TypedQuery<Patient> typedQuery;
 
+    @Spy
+    private IdempotencyService idempotency = new IdempotencyService();
+
+    @Mock
+    private EPAOutbox outbox;
+
     @InjectMocks
     private PatientResource patientResource;
 
@@ -408,12 +421,13 @@ class PatientResourceTest {
         doNothing().when(entityManager).flush();
 
         // Act
-        Response response = patientResource.createPatient(newPatient);
+        Response response = patientResource.createPatient(null, newPatient);
 
         // Assert
         assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
         verify(entityManager, times(1)).persist(any(Patient.class));
         verify(entityManager, times(1)).flush();
+        verify(outbox).enqueue(newPatient);
     }
 
     @Test
@@ -440,6 +454,7 @@ class PatientResourceTest {
         assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
         verify(entityManager, times(1)).merge(any(Patient.class));
         verify(entityManager, times(1)).flush();
+        verify(outbox).enqueue(testPatient);
     }
 
     @Test
@@ -499,4 +514,103 @@ class PatientResourceTest {
         // Assert
         assertEquals(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(), response.getStatus());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should discharge patients by id list and enqueue them in the same statement")
+    void testBulkDischargeByIds() {
+        // Arrange
+        Query updateQuery = mock(Query.class);
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        Cache cache = mock(Cache.class);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        when(entityManager.createNativeQuery(sql.capture())).thenReturn(updateQuery);
+        when(updateQuery.setParameter(anyString(), any())).thenReturn(updateQuery);
+        when(updateQuery.getSingleResult()).thenReturn(2L);
+        when(entityManager.getEntityManagerFactory()).thenReturn(emf);
+        when(emf.getCache()).thenReturn(cache);
+
+        BulkStatusRequest request = new BulkStatusRequest();
+        request.setStatus("discharged");
+        request.setIds(Arrays.asList(1L, 2L));
+
+        // Act
+        Response response = patientResource.bulkUpdateStatus(request);
+
+        // Assert
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertTrue(((String) response.getEntity()).contains("\"updated\": 2"));
+        verify(updateQuery, times(1)).getSingleResult();
+        verify(updateQuery).setParameter("ids", Arrays.asList(1L, 2L));
+        // Outbox-Einträge aus dem RETURNING des UPDATE, nicht über den vom Trigger überschriebenen updated_at
+        assertEquals("WITH changed AS (UPDATE patients SET status = :status, "
+                + "discharge_date = CAST(:dischargeDate AS timestamp), updated_at = :now "
+                + "WHERE status <> :status AND id IN (:ids) RETURNING id, epa_enabled), "
+                + "queued AS (INSERT INTO epa_outbox "
+                + "(patient_id, operation, status, attempts, next_attempt_at, created_at) "
+                + "SELECT id, 'upsert', 'pending', 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM changed "
+                + "WHERE epa_enabled = true "
+                + "ON CONFLICT (patient_id) WHERE status = 'pending' DO NOTHING) "
+                + "SELECT COUNT(*) FROM changed", sql.getValue());
+        verify(cache).evict(Patient.class, 1L);
+        verify(cache).evict(Patient.class, 2L);
+        verify(entityManager, never()).find(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should enqueue filtered bulk status changes for the EPA in the same statement")
+    void testBulkStatusByFilterEnqueuesOutbox() {
+        // Arrange
+        Query updateQuery = mock(Query.class);
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        when(entityManager.createNativeQuery(sql.capture())).thenReturn(updateQuery);
+        when(updateQuery.setParameter(anyString(), any())).thenReturn(updateQuery);
+        when(updateQuery.getSingleResult()).thenReturn(5L);
+        when(entityManager.getEntityManagerFactory()).thenReturn(emf);
+        when(emf.getCache()).thenReturn(mock(Cache.class));
+
+        BulkStatusRequest request = new BulkStatusRequest();
+        request.setStatus("discharged");
+        request.setCurrentStatus("active");
+
+        // Act
+        Response response = patientResource.bulkUpdateStatus(request);
+
+        // Assert
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertTrue(((String) response.getEntity()).contains("\"updated\": 5"));
+        assertTrue(sql.getValue().startsWith("WITH changed AS (UPDATE patients SET status = :status, "),
+                sql.getValue());
+        assertTrue(sql.getValue().contains("WHERE status <> :status AND status = :currentStatus "
+                + "RETURNING id, epa_enabled)"), sql.getValue());
+        assertTrue(sql.getValue().contains("INSERT INTO epa_outbox"), sql.getValue());
+        assertTrue(sql.getValue().contains("FROM changed WHERE epa_enabled = true"), sql.getValue());
+        verify(updateQuery).setParameter("currentStatus", "active");
+        verify(entityManager, never()).createQuery(anyString());
+    }
+
+    @Test
+    @DisplayName("Should reject bulk status update with unknown status")
+    void testBulkStatusInvalidStatus() {
+        BulkStatusRequest request = new BulkStatusRequest();
+        request.setStatus("deleted");
+        request.setIds(Arrays.asList(1L));
+
+        Response response = patientResource.bulkUpdateStatus(request);
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    @DisplayName("Should reject bulk status update without ids or filter")
+    void testBulkStatusWithoutSelection() {
+        BulkStatusRequest request = new BulkStatusRequest();
+        request.setStatus("active");
+
+        Response response = patientResource.bulkUpdateStatus(request);
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        verify(entityManager, never()).createQuery(anyString());
+        verify(entityManager, never()).createNativeQuery(anyString());
+    }
+}